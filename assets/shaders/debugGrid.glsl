@@ -0,0 +1,51 @@
+#type vertex
+#version 330 core
+// One triangle that covers the whole viewport, its vertices are built from gl_VertexID
+out vec2 fWorldPos;
+
+// Matrices of the camera, shared by every shader through a uniform buffer
+layout (std140) uniform Camera {
+    mat4 uProjection;
+    mat4 uView;
+};
+
+void main() {
+    vec2 ndc = vec2((gl_VertexID & 1) * 4.0 - 1.0, (gl_VertexID & 2) * 2.0 - 1.0);
+    vec4 worldPos = inverse(uProjection * uView) * vec4(ndc, 0.0, 1.0);
+    fWorldPos = worldPos.xy / worldPos.w;
+    gl_Position = vec4(ndc, 0.0, 1.0);
+}
+
+#type fragment
+#version 330 core
+
+in vec2 fWorldPos;
+
+// Size in world units of a cell, and number of cells between two major lines
+uniform vec2 uCellSize;
+uniform float uMajorEvery;
+uniform vec3 uColor;
+
+out vec4 color;
+
+// Coverage of the lines of a grid of one unit, one pixel wide whatever the zoom.
+// The lines fade out once the cells get smaller than a few pixels, instead of filling the screen
+float gridLines(vec2 coord) {
+    vec2 unitsPerPixel = fwidth(coord);
+    vec2 dist = abs(fract(coord - 0.5) - 0.5) / unitsPerPixel;
+    float line = 1.0 - min(min(dist.x, dist.y), 1.0);
+    float fade = 1.0 - smoothstep(0.15, 0.35, max(unitsPerPixel.x, unitsPerPixel.y));
+    return line * fade;
+}
+
+void main() {
+    vec2 coord = fWorldPos / uCellSize;
+    float minor = gridLines(coord) * 0.5;
+    float major = gridLines(coord / uMajorEvery);
+    float alpha = max(minor, major);
+    if (alpha <= 0.0) {
+        discard;
+    }
+    // Premultiplied alpha, to match the blending of the framebuffer
+    color = vec4(uColor * alpha, alpha);
+}
@@ -1,16 +1,42 @@
 #type vertex
 #version 330 core
-layout (location = 0) in vec3 aPos;
-layout (location = 1) in vec3 aColor;
+// One instance per line, the vertices of the line are built from gl_VertexID
+layout (location = 0) in vec2 aFrom;
+layout (location = 1) in vec2 aTo;
+layout (location = 2) in vec3 aColor;
 
 out vec3 fColor;
 
-uniform mat4 uView;
-uniform mat4 uProjection;
+// Matrices of the camera, shared by every shader through a uniform buffer
+layout (std140) uniform Camera {
+    mat4 uProjection;
+    mat4 uView;
+};
+
+// Width of the lines in pixels, thin GL_LINES are drawn when it is 0
+uniform float uLineWidth;
+uniform vec2 uResolution;
 
 void main() {
     fColor = aColor;
-    gl_Position = uProjection * uView * vec4(aPos, 1.0);
+    vec4 from = uProjection * uView * vec4(aFrom, -10.0, 1.0);
+    vec4 to = uProjection * uView * vec4(aTo, -10.0, 1.0);
+
+    if (uLineWidth <= 0.0) {
+        gl_Position = gl_VertexID == 0 ? from : to;
+        return;
+    }
+
+    // Quad of 4 vertices drawn as a triangle strip, extended by half the width on every side in screen space
+    vec2 screenDir = (to.xy - from.xy) * uResolution;
+    vec2 dir = length(screenDir) > 0.0 ? normalize(screenDir) : vec2(1.0, 0.0);
+    vec2 normal = vec2(-dir.y, dir.x);
+    float along = (gl_VertexID & 1) == 0 ? -1.0 : 1.0;
+    float side = (gl_VertexID & 2) == 0 ? -1.0 : 1.0;
+
+    vec4 position = (gl_VertexID & 1) == 0 ? from : to;
+    position.xy += (dir * along + normal * side) * uLineWidth / uResolution;
+    gl_Position = position;
 }
 
 #type fragment
@@ -23,4 +49,3 @@ out vec4 color;
 void main() {
     color = vec4(fColor, 1);
 }
-
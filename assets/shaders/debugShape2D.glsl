@@ -0,0 +1,125 @@
+#type vertex
+#version 330 core
+// One instance per shape, the corners of the quad that bounds the shape are built from gl_VertexID
+layout (location = 0) in vec2 aCenter;
+layout (location = 1) in vec2 aSize;
+layout (location = 2) in vec2 aAxis;
+layout (location = 3) in vec4 aColor;
+layout (location = 4) in uint aShape;
+
+// Position in the space of the shape, before its rotation
+out vec2 fLocal;
+flat out vec2 fSize;
+flat out vec4 fColor;
+flat out uint fShape;
+
+// Matrices of the camera, shared by every shader through a uniform buffer
+layout (std140) uniform Camera {
+    mat4 uProjection;
+    mat4 uView;
+};
+
+// Width of the outlines in pixels
+uniform float uOutlineWidth;
+uniform vec2 uResolution;
+
+const uint CAPSULE = 2u;
+const uint ARROW = 3u;
+
+void main() {
+    fSize = aSize;
+    fColor = aColor;
+    fShape = aShape;
+
+    // Half the extent of the shape, the size of a capsule or an arrow is its half length and its width
+    vec2 extent = aSize;
+    if (aShape == CAPSULE) {
+        extent = vec2(aSize.x + aSize.y, aSize.y);
+    } else if (aShape == ARROW) {
+        extent = vec2(aSize.x, aSize.y * 0.5);
+    }
+
+    // The quad is grown by the outline and one pixel of antialiasing, the view does not scale
+    vec2 pixel = 2.0 / (vec2(uProjection[0][0], uProjection[1][1]) * uResolution);
+    extent += max(pixel.x, pixel.y) * (uOutlineWidth + 1.0);
+
+    vec2 corner = vec2((gl_VertexID & 1) == 0 ? -1.0 : 1.0, (gl_VertexID & 2) == 0 ? -1.0 : 1.0) * extent;
+    fLocal = corner;
+    vec2 position = aCenter + vec2(corner.x * aAxis.x - corner.y * aAxis.y, corner.x * aAxis.y + corner.y * aAxis.x);
+    gl_Position = uProjection * uView * vec4(position, -10.0, 1.0);
+}
+
+#type fragment
+#version 330 core
+
+in vec2 fLocal;
+flat in vec2 fSize;
+flat in vec4 fColor;
+flat in uint fShape;
+
+uniform float uOutlineWidth;
+
+out vec4 color;
+
+const uint CIRCLE = 0u;
+const uint BOX = 1u;
+const uint CAPSULE = 2u;
+
+float sdBox(vec2 p, vec2 halfSize) {
+    vec2 d = abs(p) - halfSize;
+    return length(max(d, 0.0)) + min(max(d.x, d.y), 0.0);
+}
+
+float sdSegment(vec2 p, vec2 a, vec2 b) {
+    vec2 pa = p - a;
+    vec2 ba = b - a;
+    float h = clamp(dot(pa, ba) / max(dot(ba, ba), 1e-12), 0.0, 1.0);
+    return length(pa - ba * h);
+}
+
+float sdTriangle(vec2 p, vec2 p0, vec2 p1, vec2 p2) {
+    vec2 e0 = p1 - p0, e1 = p2 - p1, e2 = p0 - p2;
+    vec2 v0 = p - p0, v1 = p - p1, v2 = p - p2;
+    vec2 pq0 = v0 - e0 * clamp(dot(v0, e0) / dot(e0, e0), 0.0, 1.0);
+    vec2 pq1 = v1 - e1 * clamp(dot(v1, e1) / dot(e1, e1), 0.0, 1.0);
+    vec2 pq2 = v2 - e2 * clamp(dot(v2, e2) / dot(e2, e2), 0.0, 1.0);
+    float s = sign(e0.x * e2.y - e0.y * e2.x);
+    vec2 d = min(min(vec2(dot(pq0, pq0), s * (v0.x * e0.y - v0.y * e0.x)),
+                     vec2(dot(pq1, pq1), s * (v1.x * e1.y - v1.y * e1.x))),
+                     vec2(dot(pq2, pq2), s * (v2.x * e2.y - v2.y * e2.x)));
+    return -sqrt(d.x) * sign(d.y);
+}
+
+void main() {
+    // Signed distance to the shape in world units, negative inside
+    float dist;
+    float fillOpacity = fColor.a;
+    if (fShape == CIRCLE) {
+        dist = length(fLocal) - fSize.x;
+    } else if (fShape == BOX) {
+        dist = sdBox(fLocal, fSize);
+    } else if (fShape == CAPSULE) {
+        dist = sdSegment(fLocal, vec2(-fSize.x, 0.0), vec2(fSize.x, 0.0)) - fSize.y;
+    } else {
+        // Arrow, a shaft with a filled head at its end
+        float headLength = min(fSize.y, 2.0 * fSize.x);
+        float headStart = fSize.x - headLength;
+        float shaft = sdSegment(fLocal, vec2(-fSize.x, 0.0), vec2(headStart, 0.0));
+        float head = sdTriangle(fLocal, vec2(fSize.x, 0.0),
+                                vec2(headStart, 0.5 * fSize.y), vec2(headStart, -0.5 * fSize.y));
+        dist = min(shaft, head);
+        fillOpacity = 1.0;
+    }
+
+    // Distance in pixels, the outline is centered on the edge of the shape
+    float pixelSize = length(fwidth(fLocal)) * 0.70710678;
+    float pixels = dist / max(pixelSize, 1e-12);
+    float outline = clamp(uOutlineWidth * 0.5 + 0.5 - abs(pixels), 0.0, 1.0);
+    float fill = clamp(0.5 - pixels, 0.0, 1.0) * fillOpacity;
+    float alpha = max(outline, fill);
+    if (alpha <= 0.0) {
+        discard;
+    }
+    // Premultiplied alpha, to match the blending of the framebuffer
+    color = vec4(fColor.rgb * alpha, alpha);
+}
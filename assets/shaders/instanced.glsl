@@ -0,0 +1,129 @@
+#type vertex
+#version 330 core
+layout (location=0) in vec2 aCorner;
+layout (location=1) in vec4 aColor;
+layout (location=3) in uint aTexId;
+layout (location=4) in uint aEntityId;
+layout (location=5) in uint aTexLayer;
+layout (location=6) in vec3 aPos;
+layout (location=7) in vec2 aScale;
+layout (location=8) in vec2 aOffset;
+layout (location=9) in float aRotation;
+layout (location=10) in vec4 aUvRect;
+
+// Matrices of the camera, shared by every shader through a uniform buffer
+layout (std140) uniform Camera {
+    mat4 uProjection;
+    mat4 uView;
+};
+
+out vec4 fColor;
+out vec2 fTexCoords;
+flat out uint fTexId;
+flat out uint fEntityId;
+flat out uint fTexLayer;
+
+void main(){
+    fColor = aColor;
+    fTexCoords = mix(aUvRect.xy, aUvRect.zw, aCorner);
+    fTexId = aTexId;
+    fEntityId = aEntityId;
+    fTexLayer = aTexLayer;
+
+    // Scale, rotate and move the corner of the quad like the transform of the game object
+    vec2 local = (aCorner - 0.5) * aScale + aOffset;
+    float s = sin(radians(aRotation));
+    float c = cos(radians(aRotation));
+    vec2 world = aPos.xy + vec2(local.x * c - local.y * s, local.x * s + local.y * c);
+
+    gl_Position = uProjection * uView * vec4(world, 0.0, 1.0);
+    // The z of the position is the zIndex, higher layers are closer to the camera when the depth is tested
+    gl_Position.z = clamp(-aPos.z / 32768.0, -1.0, 1.0);
+}
+
+#type fragment
+#version 330 core
+
+//uniform float uTime;
+//uniform sampler2D TEX_SAMPLER;
+
+in vec4 fColor;
+in vec2 fTexCoords;
+flat in uint fTexId;
+flat in uint fEntityId;
+flat in uint fTexLayer;
+
+uniform sampler2DArray uTextures[MAX_TEXTURE_SLOTS];
+
+layout (location=0) out vec4 color;
+// Entity id of the fragment, written to the integer attachment of the framebuffer for picking
+layout (location=1) out uint entityId;
+
+// Samples the texture array bound to a slot, the index of a sampler array has to be constant in GLSL 330
+vec4 sampleTexture(int slot, vec3 coords){
+    switch (slot) {
+        case 0: return texture(uTextures[0], coords);
+        case 1: return texture(uTextures[1], coords);
+        case 2: return texture(uTextures[2], coords);
+        case 3: return texture(uTextures[3], coords);
+        case 4: return texture(uTextures[4], coords);
+        case 5: return texture(uTextures[5], coords);
+        case 6: return texture(uTextures[6], coords);
+        case 7: return texture(uTextures[7], coords);
+#if MAX_TEXTURE_SLOTS > 8
+        case 8: return texture(uTextures[8], coords);
+        case 9: return texture(uTextures[9], coords);
+        case 10: return texture(uTextures[10], coords);
+        case 11: return texture(uTextures[11], coords);
+        case 12: return texture(uTextures[12], coords);
+        case 13: return texture(uTextures[13], coords);
+        case 14: return texture(uTextures[14], coords);
+        case 15: return texture(uTextures[15], coords);
+#endif
+#if MAX_TEXTURE_SLOTS > 16
+        case 16: return texture(uTextures[16], coords);
+        case 17: return texture(uTextures[17], coords);
+        case 18: return texture(uTextures[18], coords);
+        case 19: return texture(uTextures[19], coords);
+        case 20: return texture(uTextures[20], coords);
+        case 21: return texture(uTextures[21], coords);
+        case 22: return texture(uTextures[22], coords);
+        case 23: return texture(uTextures[23], coords);
+#endif
+#if MAX_TEXTURE_SLOTS > 24
+        case 24: return texture(uTextures[24], coords);
+        case 25: return texture(uTextures[25], coords);
+        case 26: return texture(uTextures[26], coords);
+        case 27: return texture(uTextures[27], coords);
+        case 28: return texture(uTextures[28], coords);
+        case 29: return texture(uTextures[29], coords);
+        case 30: return texture(uTextures[30], coords);
+        case 31: return texture(uTextures[31], coords);
+#endif
+    }
+    return vec4(1, 1, 1, 1);
+}
+
+void main(){
+    //Ilumination
+        //float avg = (fColor.r + fColor.g + fColor.b) / 3;
+        //color = vec4(avg, avg, avg, 1) * fColor;
+
+    //float noise = fract(sin(dot(fColor.xy, vec2(12.9898, 78.233))) * 43758.5453);
+    if (fTexId > 0u){
+        // Slot 0 means no texture, so the texture array of slot n is stored as n + 1
+        int id = int(fTexId) - 1;
+        color = fColor * sampleTexture(id, vec3(fTexCoords, float(fTexLayer)));
+        //TEST
+            //color = vec4(fTexCoords, 0, 1);
+    } else {
+        color = fColor;
+    }
+
+    // Blending does not apply to the entity ids, so fully transparent pixels must not overwrite them
+    if (color.a == 0.0) {
+        discard;
+    }
+    entityId = fEntityId;
+
+}
\ No newline at end of file
@@ -17,6 +17,7 @@ import org.joml.Vector2f;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.function.ObjIntConsumer;
 
 /**
  * This class initializes the level editor scene, load the resources and UI elements.
@@ -27,6 +28,8 @@ public class LevelEditorSceneInitializer extends SceneInitializer {
 
     private GameObject levelEditorStuff;
 
+    private Tilemap tilemapComponent;
+
     public LevelEditorSceneInitializer(){
 
     }
@@ -50,6 +53,16 @@ public class LevelEditorSceneInitializer extends SceneInitializer {
         levelEditorStuff.addComponent(new EditorCamera(scene.camera()));
         levelEditorStuff.addComponent(new GizmoSystem(gizmos));
         scene.addGameObjectToScene(levelEditorStuff);
+
+        // A level without a tilemap gets one that is only added to the scene when the first tile is painted,
+        // so opening a level does not change it
+        GameObject tilemapObject = scene.getGameObjectWith(Tilemap.class);
+        if (tilemapObject == null) {
+            tilemapObject = scene.createGameObject("Tilemap");
+            tilemapObject.addComponent(new Tilemap(
+                    "assets/texture/NinjaAdventure/Actor/Characters/BlackNinjaMage/SpriteSheet.png"));
+        }
+        tilemapComponent = tilemapObject.getComponent(Tilemap.class);
     }
 
     /**
@@ -85,6 +98,8 @@ public class LevelEditorSceneInitializer extends SceneInitializer {
                                 16, 16, 16,0
                 ));
 
+        AssetPool.packTextures();
+
         AssetPool.addSound("assets/texture/NinjaAdventure/Musics/5 - Peaceful.ogg",true);
         AssetPool.addSound("assets/texture/NinjaAdventure/Musics/7 - Sad Theme.ogg",false);
         AssetPool.addSound("assets/texture/NinjaAdventure/Musics/8 - End Theme.ogg",false);
@@ -155,46 +170,26 @@ public class LevelEditorSceneInitializer extends SceneInitializer {
 
         if (ImGui.beginTabBar("WindowTabBar")) {
             if (ImGui.beginTabItem("Blocks")) {
-                ImVec2 windowPos = new ImVec2();
-                ImGui.getWindowPos(windowPos);
-
-                ImVec2 windowSize = new ImVec2();
-                ImGui.getWindowSize(windowSize);
-
-                ImVec2 itemSpacing = new ImVec2();
-                ImGui.getStyle().getItemSpacing(itemSpacing);
-
-                float windowX2 = windowPos.x + windowSize.x;
-                for (int i = 0; i < tileMap.size(); i++) {
-                    Sprite sprite = tileMap.getSprite(i);
-                    float spriteWidth = sprite.getWidth() * 3;
-                    float spriteHeight = sprite.getHeight() * 3;
-                    int id = sprite.getTexId();
-                    Vector2f[] texCoords = sprite.getTexCoords();
-
-                    ImGui.pushID(i);
-                    if (ImGui.imageButton(id, spriteWidth, spriteHeight, texCoords[2].x, texCoords[0].y, texCoords[0].x, texCoords[2].y)) {
-                        GameObject object = Prefabs.generateSpriteObject(sprite, Settings.GRID_WIDTH, Settings.GRID_HEIGHT);
-                        /* TODO Have a ground floor*/
-                        RigidBody2D rb = new RigidBody2D();
-                        rb.setBodyType(BodyType.Static);
-                        object.addComponent(rb);
-                        Box2DCollider b2b = new Box2DCollider();
-                        b2b.setHalfSize(new Vector2f(0.25f, 0.25f));
-                        object.addComponent(b2b);
-                        //object.addComponent(new BreakableBrick());
-                        levelEditorStuff.getComponent(MouseControls.class).pickupObject(object);
-                    }
-                    ImGui.popID();
-
-                    ImVec2 lastButtonPos = new ImVec2();
-                    ImGui.getItemRectMax(lastButtonPos);
-                    float lastButtonX2 = lastButtonPos.x;
-                    float nextButtonX2 = lastButtonX2 + itemSpacing.x + spriteWidth;
-                    if (i + 1 < tileMap.size() && nextButtonX2 < windowX2) {
-                        ImGui.sameLine();
-                    }
-                }
+                spritePalette(tileMap, (sprite, i) -> {
+                    GameObject object = Prefabs.generateSpriteObject(sprite, Settings.GRID_WIDTH, Settings.GRID_HEIGHT);
+                    /* TODO Have a ground floor*/
+                    RigidBody2D rb = new RigidBody2D();
+                    rb.setBodyType(BodyType.Static);
+                    object.addComponent(rb);
+                    Box2DCollider b2b = new Box2DCollider();
+                    b2b.setHalfSize(new Vector2f(0.25f, 0.25f));
+                    object.addComponent(b2b);
+                    //object.addComponent(new BreakableBrick());
+                    levelEditorStuff.getComponent(MouseControls.class).pickupObject(object);
+                });
+                ImGui.endTabItem();
+            }
+            if (ImGui.beginTabItem("Tiles")) {
+                spritePalette(AssetPool.getSpriteSheet(tilemapComponent.getSpriteSheet()), (sprite, i) -> {
+                    GameObject preview = Prefabs.generateSpriteObject(sprite, Settings.GRID_WIDTH, Settings.GRID_HEIGHT);
+                    preview.setNoSerialize();
+                    levelEditorStuff.getComponent(MouseControls.class).pickupTile(tilemapComponent, i, preview);
+                });
                 ImGui.endTabItem();
             }
             if (ImGui.beginTabItem("Prefabs")){
@@ -235,4 +230,44 @@ public class LevelEditorSceneInitializer extends SceneInitializer {
         }
         ImGui.end();
     }
+
+    /**
+     * Shows the sprites of a sprite sheet as image buttons, wrapped to the width of the window.
+     *
+     * @param sheet The sprite sheet to show.
+     * @param onClick Called with the sprite and its index in the sprite sheet when its button is clicked.
+     * */
+    private void spritePalette(SpritesSheet sheet, ObjIntConsumer<Sprite> onClick) {
+        ImVec2 windowPos = new ImVec2();
+        ImGui.getWindowPos(windowPos);
+
+        ImVec2 windowSize = new ImVec2();
+        ImGui.getWindowSize(windowSize);
+
+        ImVec2 itemSpacing = new ImVec2();
+        ImGui.getStyle().getItemSpacing(itemSpacing);
+
+        float windowX2 = windowPos.x + windowSize.x;
+        for (int i = 0; i < sheet.size(); i++) {
+            Sprite sprite = sheet.getSprite(i);
+            float spriteWidth = sprite.getWidth() * 3;
+            float spriteHeight = sprite.getHeight() * 3;
+            int id = sprite.getTexId();
+            Vector2f[] texCoords = sprite.getTexCoords();
+
+            ImGui.pushID(i);
+            if (ImGui.imageButton(id, spriteWidth, spriteHeight, texCoords[2].x, texCoords[0].y, texCoords[0].x, texCoords[2].y)) {
+                onClick.accept(sprite, i);
+            }
+            ImGui.popID();
+
+            ImVec2 lastButtonPos = new ImVec2();
+            ImGui.getItemRectMax(lastButtonPos);
+            float lastButtonX2 = lastButtonPos.x;
+            float nextButtonX2 = lastButtonX2 + itemSpacing.x + spriteWidth;
+            if (i + 1 < sheet.size() && nextButtonX2 < windowX2) {
+                ImGui.sameLine();
+            }
+        }
+    }
 }
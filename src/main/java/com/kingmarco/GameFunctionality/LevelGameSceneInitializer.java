@@ -66,6 +66,8 @@ public class LevelGameSceneInitializer extends SceneInitializer {
                         16, 16, 16,0
                 ));
 
+        AssetPool.packTextures();
+
         AssetPool.addSound("assets/texture/NinjaAdventure/Musics/5 - Peaceful.ogg",true);
         AssetPool.addSound("assets/texture/NinjaAdventure/Musics/7 - Sad Theme.ogg",false);
         AssetPool.addSound("assets/texture/NinjaAdventure/Musics/8 - End Theme.ogg",false);
@@ -10,7 +10,6 @@ import com.kingmarco.physics2d.Physics2D;
 import com.kingmarco.physics2d.RaycastInfo;
 import com.kingmarco.physics2d.components.RigidBody2D;
 import com.kingmarco.renderer.DebugDraw;
-import com.kingmarco.renderer.DrawLines;
 import com.kingmarco.util.AssetPool;
 import org.jbox2d.dynamics.contacts.Contact;
 import org.joml.Vector2f;
@@ -46,16 +45,12 @@ public class PlayerController extends Component {
     private transient Vector2f velocity = new Vector2f();
     private transient boolean isDead = false;
     private transient int enemyBounce = 0;
-    private final transient DrawLines drawLines = new DrawLines(2);
 
     @Override
     public void start() {
         this.rb = gameObject.getComponent(RigidBody2D.class);
         this.stateMachine = gameObject.getComponent(StateMachine.class);
         this.rb.setGravityScale(0.0f);
-
-        drawLines.start();
-        DebugDraw.addDrawLines(drawLines);
     }
 
     @Override
@@ -137,8 +132,8 @@ public class PlayerController extends Component {
 
         onGround = Physics2D.checkOnGround(gameObject, innerPlayerWidth, yVal);
 
-        //drawLines.addLine2D(raycastBegin, raycastEnd, new Vector3f(1f, 0f, 0f));
-        //drawLines.addLine2D(raycast2Begin, raycast2End, new Vector3f(1f, 0f, 0f));
+        //DebugDraw.line(raycastBegin.x, raycastBegin.y, raycastEnd.x, raycastEnd.y, DebugDraw.RED, 1, 2);
+        //DebugDraw.line(raycast2Begin.x, raycast2Begin.y, raycast2End.x, raycast2End.y, DebugDraw.RED, 1, 2);
     }
 
     public void powerup() {
@@ -44,8 +44,8 @@ public class Gizmo extends Component{
         this.yAxisSprite = this.yAxisObject.getComponent(SpriteRenderer.class);
         this.propertiesWindow = propertiesWindow;
 
-        this.xAxisObject.transform.zIndex = 100;
-        this.yAxisObject.transform.zIndex = 100;
+        this.xAxisObject.transform.setZIndex(100);
+        this.yAxisObject.transform.setZIndex(100);
 
         Window.getScene().addGameObjectToScene(this.xAxisObject);
         Window.getScene().addGameObjectToScene(this.yAxisObject);
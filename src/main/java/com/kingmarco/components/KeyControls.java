@@ -63,11 +63,11 @@ public class KeyControls extends Component{
             propertiesWindow.clearSelected();
         } else if (KeyListener.isKeyPressed(GLFW_KEY_PAGE_DOWN)){
             for (GameObject go : activeGameObjects){
-                go.transform.zIndex--;
+                go.transform.setZIndex(go.transform.getZIndex() - 1);
             }
         } else if (KeyListener.isKeyPressed(GLFW_KEY_PAGE_UP)){
             for (GameObject go : activeGameObjects){
-                go.transform.zIndex++;
+                go.transform.setZIndex(go.transform.getZIndex() + 1);
             }
         }  else if (KeyListener.isKeyPressed(GLFW_KEY_UP)){
             for (GameObject go : activeGameObjects){
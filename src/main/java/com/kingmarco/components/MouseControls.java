@@ -6,9 +6,7 @@ import com.kingmarco.forge.KeyListener;
 import com.kingmarco.forge.MouseListener;
 import com.kingmarco.forge.Window;
 import com.kingmarco.renderer.DebugDraw;
-import com.kingmarco.renderer.DrawLines;
 import com.kingmarco.renderer.PickingTexture;
-import com.kingmarco.scenes.Scene;
 import com.kingmarco.util.Settings;
 import org.joml.Vector2f;
 import org.joml.Vector2i;
@@ -19,23 +17,27 @@ import java.util.Set;
 
 import static org.lwjgl.glfw.GLFW.GLFW_KEY_ESCAPE;
 import static org.lwjgl.glfw.GLFW.GLFW_MOUSE_BUTTON_LEFT;
+import static org.lwjgl.glfw.GLFW.GLFW_MOUSE_BUTTON_RIGHT;
 
 /**
  * Class responsible for the mouse shortcuts that control the selected game objects.
  * */
 public class MouseControls extends Component {
     GameObject holdingObject = null;
+    // Tilemap painted with the held tile, instead of placing copies of the held object
+    private Tilemap brushTilemap = null;
+    private int brushTile = Tilemap.EMPTY;
     private float debounceTime = 0.05f;
     private float debounce = debounceTime;
     private boolean boxSelectSet = false;
     private Vector2f boxSelectSart = new Vector2f();
     private Vector2f boxSelectEnd = new Vector2f();
-    private DrawLines drawLines = new DrawLines(Integer.MAX_VALUE);
+    // Set while a click pick is waiting for the picking texture, so holding the button requests it once
+    private boolean pickPending = false;
     protected PropertiesWindow propertiesWindow;
 
     public MouseControls(PropertiesWindow propertiesWindow) {
         this.propertiesWindow = propertiesWindow;
-        DebugDraw.addDrawLines(drawLines);
     }
 
     /**
@@ -47,14 +49,31 @@ public class MouseControls extends Component {
            this.holdingObject.destroy();
         }
         this.holdingObject = go;
+        this.brushTilemap = null;
         this.holdingObject.getComponent(SpriteRenderer.class).setColor(new Vector4f(0.8f,0.8f,0.8f,0.5f));
         Window.getScene().addGameObjectToScene(go);
     }
 
     /**
-     * Place the game object in the scene
+     * Pick up a tile to paint it in a tilemap
+     * @param tilemap Tilemap where the tile will be painted
+     * @param tile Index of the tile in the sprite sheet of the tilemap
+     * @param preview Game object that shows the tile under the mouse
+     * */
+    public void pickupTile(Tilemap tilemap, int tile, GameObject preview) {
+        pickupObject(preview);
+        this.brushTilemap = tilemap;
+        this.brushTile = tile;
+    }
+
+    /**
+     * Place the game object in the scene, or paint the held tile in the tilemap
      * */
     public void place() {
+        if (brushTilemap != null) {
+            paint(brushTile);
+            return;
+        }
         GameObject newObj = this.holdingObject.copy();
         newObj.getComponent(SpriteRenderer.class).setColor(new Vector4f(1, 1, 1, 1));
         if (newObj.getComponent(StateMachine.class) != null) {
@@ -63,6 +82,19 @@ public class MouseControls extends Component {
         Window.getScene().addGameObjectToScene(newObj);
     }
 
+    /**
+     * Set the tile of the tilemap under the held object
+     * @param tile Index of the tile in the sprite sheet, or Tilemap.EMPTY to clear it
+     * */
+    private void paint(int tile) {
+        if (tile != Tilemap.EMPTY && Window.getScene().getGameObject(brushTilemap.gameObject.getUid()) == null) {
+            // The tilemap only joins the scene, and the saved level, once it gets its first tile
+            Window.getScene().addGameObjectToScene(brushTilemap.gameObject);
+        }
+        brushTilemap.setTile(brushTilemap.getTileX(holdingObject.transform.position.x),
+                brushTilemap.getTileY(holdingObject.transform.position.y), tile);
+    }
+
     /**
      * Get the selected game object, change their setting and place in the scene based in the mouse listener
      *
@@ -72,7 +104,6 @@ public class MouseControls extends Component {
     public void editorUpdate(float dt) {
         debounce -= dt;
         PickingTexture pickingTexture = Window.getImGuiLayer().getPropertiesWindow().getPickingTexture();
-        Scene currentScene = Window.getScene();
         if (holdingObject != null){
             float x = MouseListener.getWorldX();
             float y = MouseListener.getWorldY();
@@ -81,9 +112,9 @@ public class MouseControls extends Component {
             if (MouseListener.mouseButtonDown(GLFW_MOUSE_BUTTON_LEFT)){
                 float halfWidth = Settings.GRID_WIDTH / 2.0f;
                 float halfHeight = Settings.GRID_HEIGHT / 2.0f;
-                if (MouseListener.isDragging() &&
+                if (MouseListener.isDragging() && (brushTilemap != null ||
                         !blockInSquare(holdingObject.transform.position.x - halfWidth,
-                                holdingObject.transform.position.y - halfHeight)){
+                                holdingObject.transform.position.y - halfHeight))){
                     place();
                 } else if (!MouseListener.isDragging() && debounce < 0) {
                     place();
@@ -91,19 +122,29 @@ public class MouseControls extends Component {
                 }
             }
 
+            if (brushTilemap != null && MouseListener.mouseButtonDown(GLFW_MOUSE_BUTTON_RIGHT)) {
+                paint(Tilemap.EMPTY);
+            }
+
             if (KeyListener.isKeyPressed(GLFW_KEY_ESCAPE)){
                 holdingObject.destroy();
                 holdingObject = null;
+                brushTilemap = null;
             }
         } else if (MouseListener.mouseButtonDown((GLFW_MOUSE_BUTTON_LEFT)) && !MouseListener.isDragging()){
-            int x = (int) MouseListener.getScreenX();
-            int y = (int) MouseListener.getScreenY();
-            int gameObjectId = pickingTexture.readPixel(x, y);
-            GameObject selectedGameObj = currentScene.getGameObject(gameObjectId);
-            if (selectedGameObj != null) {
-                Window.getImGuiLayer().getPropertiesWindow().setActiveGameObject(selectedGameObj);
-            } else if (!MouseListener.isDragging()){
-                Window.getImGuiLayer().getPropertiesWindow().clearSelected();
+            if (!pickPending) {
+                pickPending = true;
+                int x = (int) MouseListener.getScreenX();
+                int y = (int) MouseListener.getScreenY();
+                pickingTexture.requestPixel(x, y, gameObjectId -> {
+                    pickPending = false;
+                    GameObject selectedGameObj = Window.getScene().getGameObject(gameObjectId);
+                    if (selectedGameObj != null) {
+                        Window.getImGuiLayer().getPropertiesWindow().setActiveGameObject(selectedGameObj);
+                    } else if (!MouseListener.isDragging()){
+                        Window.getImGuiLayer().getPropertiesWindow().clearSelected();
+                    }
+                });
             }
         } else if (MouseListener.isDragging() && MouseListener.mouseButtonDown(GLFW_MOUSE_BUTTON_LEFT)
                 && holdingObject == null && propertiesWindow.getActiveGameObject() == null){
@@ -115,10 +156,10 @@ public class MouseControls extends Component {
             boxSelectEnd = MouseListener.getScreen();
             Vector2f boxSelectStartWorld = MouseListener.screenToWorld(boxSelectSart);
             Vector2f boxSelectEndWorld = MouseListener.screenToWorld(boxSelectEnd);
-            Vector2f halfSize =
-                    (new Vector2f(boxSelectEndWorld).sub(boxSelectStartWorld)).mul(0.5f);
-            drawLines.addBox2D(new Vector2f(boxSelectStartWorld).add(halfSize),
-                    new Vector2f(halfSize).mul(2.0f), 0.0f);
+            DebugDraw.box((boxSelectStartWorld.x + boxSelectEndWorld.x) * 0.5f,
+                    (boxSelectStartWorld.y + boxSelectEndWorld.y) * 0.5f,
+                    boxSelectEndWorld.x - boxSelectStartWorld.x, boxSelectEndWorld.y - boxSelectStartWorld.y,
+                    0.0f, DebugDraw.GREEN, 1, Integer.MAX_VALUE);
         } else if (boxSelectSet) {
             boxSelectSet = false;
             int screenStartX = (int)boxSelectSart.x;
@@ -139,46 +180,50 @@ public class MouseControls extends Component {
                 screenEndY = tmp;
             }
 
-            float[] gameObjectsIds = pickingTexture.readPixels(
+            pickingTexture.requestPixels(
                     new Vector2i(screenStartX, screenStartY),
-                    new Vector2i(screenEndX, screenEndY)
-            );
-            Set<Integer> uniqueGameObjectsIds = new HashSet<>();
-
-            for (float objId : gameObjectsIds){
-                uniqueGameObjectsIds.add((int) objId);
-            }
-
-            for (Integer gameObjectId : uniqueGameObjectsIds) {
-                GameObject pickedObj = Window.getScene().getGameObject(gameObjectId);
-                if (pickedObj != null) {
-                    Window.getImGuiLayer().getPropertiesWindow().addActiveGameObject(pickedObj);
-                }
-            }
+                    new Vector2i(screenEndX, screenEndY),
+                    gameObjectsIds -> {
+                        Set<Integer> uniqueGameObjectsIds = new HashSet<>();
+
+                        for (int objId : gameObjectsIds){
+                            uniqueGameObjectsIds.add(objId);
+                        }
+
+                        for (Integer gameObjectId : uniqueGameObjectsIds) {
+                            GameObject pickedObj = Window.getScene().getGameObject(gameObjectId);
+                            if (pickedObj != null) {
+                                Window.getImGuiLayer().getPropertiesWindow().addActiveGameObject(pickedObj);
+                            }
+                        }
+                    });
         }
     }
 
     /**
      * Check if in the square grid is a game object with a sprite renderer
      *
+     * The sprites of the scene are tested on the CPU, so placing blocks while dragging does not need
+     * the picking texture. Objects that are not saved with the level, like the gizmos, and sprites the picking
+     * shader would discard, because their alpha is below 0.5, never block a square.
+     *
      * @return true if there is a game object in a square grid or false if there is none
      * */
     private boolean blockInSquare(float x, float y) {
-        PropertiesWindow propertiesWindow = Window.getImGuiLayer().getPropertiesWindow();
-        Vector2f start = new Vector2f(x, y);
-        Vector2f end = new Vector2f(start).add(new Vector2f(Settings.GRID_WIDTH, Settings.GRID_HEIGHT));
-        Vector2f startScreenf = MouseListener.worldToScreen(start);
-        Vector2f endScreenf = MouseListener.worldToScreen(end);
-        Vector2i startScreen = new Vector2i((int)startScreenf.x + 2, (int)startScreenf.y + 2);
-        Vector2i endScreen = new Vector2i((int)endScreenf.x - 2, (int)endScreenf.y - 2);
-        float[] gameObjectIds = propertiesWindow.getPickingTexture().readPixels(startScreen, endScreen);
-
-        for (int i = 0; i < gameObjectIds.length; i++){
-            if (gameObjectIds[i] >= 0){
-                GameObject pickedObj = Window.getScene().getGameObject((int)gameObjectIds[i]);
-                if (pickedObj.getComponent(SpriteRenderer.class) != null) {
-                    return true;
-                }
+        // Shrink the square a little, so the sprites of the neighbouring squares do not count
+        float inset = Math.min(Settings.GRID_WIDTH, Settings.GRID_HEIGHT) * 0.1f;
+        float minX = x + inset, minY = y + inset;
+        float maxX = x + Settings.GRID_WIDTH - inset, maxY = y + Settings.GRID_HEIGHT - inset;
+
+        for (GameObject go : Window.getScene().getGameObjects()) {
+            if (go == holdingObject || !go.doSerialization()) continue;
+            SpriteRenderer spr = go.getComponent(SpriteRenderer.class);
+            if (spr == null || spr.getColor().w < 0.5f) continue;
+            float halfWidth = Math.abs(go.transform.scale.x) * 0.5f;
+            float halfHeight = Math.abs(go.transform.scale.y) * 0.5f;
+            if (go.transform.position.x - halfWidth < maxX && go.transform.position.x + halfWidth > minX &&
+                    go.transform.position.y - halfHeight < maxY && go.transform.position.y + halfHeight > minY) {
+                return true;
             }
         }
         return false;
@@ -4,6 +4,7 @@ import com.kingmarco.forge.Window;
 import com.kingmarco.physics2d.components.Box2DCollider;
 import com.kingmarco.physics2d.components.CircleCollider;
 import com.kingmarco.physics2d.components.RigidBody2D;
+import com.kingmarco.renderer.DebugDraw;
 import org.joml.Vector2f;
 
 /**
@@ -32,14 +33,17 @@ public class PillboxCollider extends Component{
     }
 
     /**
-     * Update the colliders that compose the pillbox colliders in editor mode
+     * Draw the colliders that compose the pillbox collider in editor mode, the two circles as a single capsule
      *
      * @param dt The time elapsed since the last update (in seconds).
      * */
     @Override
     public void editorUpdate(float dt) {
-        topCircle.editorUpdate(dt);
-        bottomCircle.editorUpdate(dt);
+        Vector2f position = this.gameObject.transform.position;
+        Vector2f top = topCircle.getOffset();
+        Vector2f bottom = bottomCircle.getOffset();
+        DebugDraw.capsule(position.x + bottom.x, position.y + bottom.y, position.x + top.x, position.y + top.y,
+                topCircle.getRadius(), DebugDraw.GREEN, 1, 2);
         box.editorUpdate(dt);
 
         if (resetFixtureNextFrame) {
@@ -1,7 +1,9 @@
 package com.kingmarco.components;
 
 import com.kingmarco.editor.JImGui;
+import com.kingmarco.renderer.Renderer;
 import com.kingmarco.renderer.Texture;
+import com.kingmarco.util.Settings;
 import imgui.ImGui;
 import org.joml.Vector2f;
 import org.joml.Vector4f;
@@ -13,8 +15,13 @@ public class SpriteRenderer extends Component {
 
     private Vector4f color = new Vector4f(1, 1, 1, 1);
     private Sprite sprite = new Sprite();
+    // Always render the sprite from a static batch, instead of waiting for it to stop changing
+    private boolean isStatic = false;
     private transient Transform lastTransform;
     private transient boolean isDirty = true;
+    private transient Renderer renderer = null;
+    private transient int unchangedFrames = 0;
+    private transient int changedFrames = 0;
 
     /**
      * This method is called when the scene starts.
@@ -58,6 +65,10 @@ public class SpriteRenderer extends Component {
         if(JImGui.colorPicker4("Color Picker", this.color)){
             this.isDirty = true;
         }
+        if (ImGui.checkbox("Static", this.isStatic)) {
+            this.isStatic = !this.isStatic;
+            staticStateChanged();
+        }
     }
 
     /**
@@ -125,6 +136,92 @@ public class SpriteRenderer extends Component {
      */
     public void setDirty(boolean flag){this.isDirty = flag;}
 
+    /**
+     * Sets the renderer that is currently drawing this sprite.
+     *
+     * @param renderer The renderer, or null when the sprite is no longer rendered.
+     */
+    public void setRenderer(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Notifies the renderer that the zIndex of the game object changed,
+     * so the sprite is moved to a batch of the new zIndex before the next draw.
+     * The zIndex is part of the vertices, so the sprite is marked as dirty too.
+     */
+    public void zIndexChanged() {
+        this.isDirty = true;
+        if (this.renderer != null) {
+            this.renderer.zIndexChanged(this);
+        }
+    }
+
+    /**
+     * Counts a render in which the sprite did or did not change.
+     *
+     * A sprite that has not changed for {@link Settings#STATIC_SPRITE_RENDERS} renders is considered static.
+     * It only becomes dynamic again after changing in {@link Settings#DYNAMIC_SPRITE_RENDERS} renders in a row,
+     * so a sprite that changes once in a while is updated in its static batch instead of being moved
+     * to a dynamic batch and back every time.
+     *
+     * @param changed True if the sprite was dirty in this render.
+     */
+    public void countRender(boolean changed) {
+        if (changed) {
+            if (changedFrames < Settings.DYNAMIC_SPRITE_RENDERS) {
+                changedFrames++;
+            }
+            if (unchangedFrames < Settings.STATIC_SPRITE_RENDERS || changedFrames >= Settings.DYNAMIC_SPRITE_RENDERS) {
+                unchangedFrames = 0;
+            }
+        } else {
+            changedFrames = 0;
+            if (unchangedFrames < Settings.STATIC_SPRITE_RENDERS) {
+                unchangedFrames++;
+            }
+        }
+    }
+
+    /**
+     * Checks if the sprite should be rendered from a static batch.
+     *
+     * @return True if the sprite is marked as static or has not changed for a while, false otherwise.
+     */
+    public boolean isStatic() {
+        return this.isStatic || unchangedFrames >= Settings.STATIC_SPRITE_RENDERS;
+    }
+
+    /**
+     * Notifies the renderer that the sprite became static or dynamic,
+     * so the sprite is moved to a batch of the right kind before the next draw.
+     */
+    public void staticStateChanged() {
+        if (this.renderer != null) {
+            this.renderer.staticStateChanged(this);
+        }
+    }
+
+    /**
+     * Checks if the sprite can be drawn without blending.
+     *
+     * @return True if the color is fully opaque and the texture has no partially transparent pixel, false otherwise.
+     */
+    public boolean isOpaque() {
+        Texture texture = getTexture();
+        return this.color.w >= 1.0f && (texture == null || !texture.isTranslucent());
+    }
+
+    /**
+     * Notifies the renderer that the sprite became opaque or translucent,
+     * so the sprite is moved to a batch of the right pass before the next draw.
+     */
+    public void opacityChanged() {
+        if (this.renderer != null) {
+            this.renderer.opacityChanged(this);
+        }
+    }
+
     /**
      * Sets the texture for the sprite.
      *
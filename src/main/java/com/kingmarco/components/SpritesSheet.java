@@ -74,4 +74,13 @@ public class SpritesSheet {
     public int size() {
         return this.sprites.size();
     }
+
+    /**
+     * Gets the texture containing the sprite sheet.
+     *
+     * @return The texture.
+     */
+    public Texture getTexture() {
+        return this.texture;
+    }
 }
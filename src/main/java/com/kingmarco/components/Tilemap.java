@@ -0,0 +1,163 @@
+package com.kingmarco.components;
+
+import com.kingmarco.util.AssetPool;
+import com.kingmarco.util.Settings;
+import imgui.ImGui;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class responsible for a layer of tiles aligned to the grid of the editor.
+ *
+ * The tiles are stored as dense chunks of {@link #CHUNK_TILES} x {@link #CHUNK_TILES} indices into a sprite sheet,
+ * instead of a game object per tile, so the renderer can build one buffer per chunk and draw it in a single call.
+ * The tile (0, 0) starts at the position of the game object, and every tile is {@link Settings#GRID_WIDTH}
+ * x {@link Settings#GRID_HEIGHT} world units. The zIndex of the game object orders the layer among the sprites.
+ */
+public class Tilemap extends Component {
+    public static final int CHUNK_TILES = 32;
+    public static final int EMPTY = -1;
+
+    private String spriteSheet;
+    // Sprite index + 1 of every tile, 0 is empty, row by row
+    private Map<Long, int[]> chunks = new HashMap<>();
+    private transient SpritesSheet sheet;
+    private transient Set<Long> dirtyChunks = new LinkedHashSet<>();
+
+    public Tilemap() {
+    }
+
+    /**
+     * Constructs a Tilemap whose tiles come from a sprite sheet of the asset pool.
+     *
+     * @param spriteSheet The resource name of the sprite sheet.
+     */
+    public Tilemap(String spriteSheet) {
+        this.spriteSheet = spriteSheet;
+    }
+
+    /**
+     * This method is called when the scene starts.
+     * It looks up the sprite sheet and marks every chunk as dirty, so the renderer builds them.
+     */
+    @Override
+    public void start() {
+        this.sheet = AssetPool.getSpriteSheet(spriteSheet);
+        this.dirtyChunks.addAll(chunks.keySet());
+    }
+
+    /**
+     * Shows the sprite sheet and the number of chunks in the editor.
+     */
+    @Override
+    public void imgui() {
+        ImGui.text("Sprite sheet: " + spriteSheet);
+        ImGui.text("Chunks: " + chunks.size());
+    }
+
+    /**
+     * Sets the tile at a position of the grid.
+     *
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @param tile The index of the sprite in the sprite sheet, or {@link #EMPTY} to clear the tile.
+     */
+    public void setTile(int x, int y, int tile) {
+        long key = chunkKey(Math.floorDiv(x, CHUNK_TILES), Math.floorDiv(y, CHUNK_TILES));
+        int[] chunk = chunks.get(key);
+        if (chunk == null) {
+            if (tile == EMPTY) return;
+            chunk = new int[CHUNK_TILES * CHUNK_TILES];
+            chunks.put(key, chunk);
+        }
+
+        int index = Math.floorMod(y, CHUNK_TILES) * CHUNK_TILES + Math.floorMod(x, CHUNK_TILES);
+        if (chunk[index] == tile + 1) return;
+        chunk[index] = tile + 1;
+        dirtyChunks.add(key);
+    }
+
+    /**
+     * Returns the tile at a position of the grid.
+     *
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @return The index of the sprite in the sprite sheet, or {@link #EMPTY} if there is no tile.
+     */
+    public int getTile(int x, int y) {
+        int[] chunk = chunks.get(chunkKey(Math.floorDiv(x, CHUNK_TILES), Math.floorDiv(y, CHUNK_TILES)));
+        if (chunk == null) return EMPTY;
+        return chunk[Math.floorMod(y, CHUNK_TILES) * CHUNK_TILES + Math.floorMod(x, CHUNK_TILES)] - 1;
+    }
+
+    /**
+     * Returns the column of the grid that contains a world position.
+     *
+     * @param worldX The horizontal world position.
+     * @return The column of the tile.
+     */
+    public int getTileX(float worldX) {
+        return (int) Math.floor((worldX - gameObject.transform.position.x) / Settings.GRID_WIDTH);
+    }
+
+    /**
+     * Returns the row of the grid that contains a world position.
+     *
+     * @param worldY The vertical world position.
+     * @return The row of the tile.
+     */
+    public int getTileY(float worldY) {
+        return (int) Math.floor((worldY - gameObject.transform.position.y) / Settings.GRID_HEIGHT);
+    }
+
+    /**
+     * Returns the key of a chunk, with the column in the high bits and the row in the low bits.
+     *
+     * @param chunkX The column of the chunk.
+     * @param chunkY The row of the chunk.
+     * @return The chunk key.
+     */
+    public static long chunkKey(int chunkX, int chunkY) {
+        return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the chunks of the tilemap.
+     *
+     * @return The tiles of every chunk, keyed by {@link #chunkKey(int, int)}.
+     */
+    public Map<Long, int[]> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Returns the keys of the chunks that changed since they were last built, and forgets them.
+     *
+     * @param into The set that receives the keys.
+     */
+    public void drainDirtyChunks(Set<Long> into) {
+        into.addAll(dirtyChunks);
+        dirtyChunks.clear();
+    }
+
+    /**
+     * Returns the sprite sheet of the tiles.
+     *
+     * @return The sprite sheet, or null before the scene starts.
+     */
+    public SpritesSheet getSheet() {
+        return sheet;
+    }
+
+    /**
+     * Returns the resource name of the sprite sheet of the tiles.
+     *
+     * @return The resource name of the sprite sheet.
+     */
+    public String getSpriteSheet() {
+        return spriteSheet;
+    }
+}
@@ -12,7 +12,7 @@ public class Transform extends Component {
     public Vector2f position;
     public Vector2f scale;
     public float rotation = 0.0f;
-    public int zIndex;
+    private int zIndex;
 
     public Transform() {
         init(new Vector2f(), new Vector2f());
@@ -39,13 +39,45 @@ public class Transform extends Component {
     }
 
 
+    /**
+     * Gets the zIndex of the transform.
+     *
+     * @return The zIndex.
+     */
+    public int getZIndex() {
+        return this.zIndex;
+    }
+
+    /**
+     * Sets the zIndex of the transform.
+     *
+     * When the value changes, the {@link SpriteRenderer} of the game object is notified,
+     * so the renderer can move it to a batch of the new zIndex before the next draw.
+     *
+     * @param zIndex The new zIndex.
+     */
+    public void setZIndex(int zIndex) {
+        if (this.zIndex == zIndex) return;
+        this.zIndex = zIndex;
+
+        if (gameObject != null) {
+            SpriteRenderer spr = gameObject.getComponent(SpriteRenderer.class);
+            if (spr != null) {
+                spr.zIndexChanged();
+            }
+        }
+    }
+
     /**
      * Creates a copy of this transform.
      *
-     * @return A new Transform with the same position and scale.
+     * @return A new Transform with the same position, scale, rotation and zIndex.
      */
     public Transform copy() {
-        return new Transform(new Vector2f(this.position), new Vector2f(this.scale));
+        Transform t = new Transform(new Vector2f(this.position), new Vector2f(this.scale));
+        t.rotation = this.rotation;
+        t.zIndex = this.zIndex;
+        return t;
     }
 
     /**
@@ -57,7 +89,7 @@ public class Transform extends Component {
         JImGui.drawVec2Control("Position", this.position);
         JImGui.drawVec2Control("Scale", this.scale, 32.0f);
         this.rotation = JImGui.dragFloat("Rotation", this.rotation);
-        this.zIndex = JImGui.dragInt("Z-Index", this.zIndex);
+        setZIndex(JImGui.dragInt("Z-Index", this.zIndex));
     }
 
     /**
@@ -68,6 +100,8 @@ public class Transform extends Component {
     public void copy(Transform to) {
         to.position.set(this.position);
         to.scale.set(this.scale);
+        to.rotation = this.rotation;
+        to.setZIndex(this.zIndex);
     }
 
     /**
@@ -3,7 +3,6 @@ package com.kingmarco.components;
 import com.kingmarco.editor.PropertiesWindow;
 import com.kingmarco.forge.MouseListener;
 import com.kingmarco.renderer.DebugDraw;
-import com.kingmarco.renderer.DrawLines;
 import org.joml.Vector2f;
 
 import static org.lwjgl.glfw.GLFW.GLFW_MOUSE_BUTTON_LEFT;
@@ -13,7 +12,6 @@ import static org.lwjgl.glfw.GLFW.GLFW_MOUSE_BUTTON_LEFT;
  * */
 public class TranslateGizmo extends Gizmo{
 
-    private final DrawLines drawLines = new DrawLines(2);
     private boolean hover = false;
     private float constantScale = 1.1f;
     private Vector2f delta = new Vector2f(0, 0);
@@ -23,12 +21,11 @@ public class TranslateGizmo extends Gizmo{
     }
 
     /**
-     * Initialize the gizmo lines.
+     * The gizmo box is drawn with {@link DebugDraw} every frame, and the axes of the base gizmo are not used,
+     * so there is nothing to initialize.
      * */
     @Override
     public void start() {
-        drawLines.start();
-        DebugDraw.addDrawLines(drawLines);
     }
 
     /**
@@ -66,9 +63,9 @@ public class TranslateGizmo extends Gizmo{
      * @param gameObjectScale The {@link Vector2f} scale of the {@link com.kingmarco.forge.GameObject}.
      * */
     private void drawLine(Vector2f gameObjectPosition, Vector2f gameObjectScale){
-        drawLines.addBox2D(new Vector2f(gameObjectPosition.x, gameObjectPosition.y),
-                new Vector2f(gameObjectScale.x * constantScale,
-                        gameObjectScale.y * constantScale), 0);
+        DebugDraw.box(gameObjectPosition.x, gameObjectPosition.y,
+                gameObjectScale.x * constantScale, gameObjectScale.y * constantScale,
+                0, DebugDraw.GREEN, 1, 2);
     }
 
     /**
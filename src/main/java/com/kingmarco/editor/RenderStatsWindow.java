@@ -0,0 +1,50 @@
+package com.kingmarco.editor;
+
+import com.kingmarco.forge.Window;
+import com.kingmarco.renderer.DynamicResolution;
+import com.kingmarco.renderer.Framebuffer;
+import com.kingmarco.renderer.RenderStats;
+import com.kingmarco.util.Settings;
+import imgui.ImGui;
+
+/**
+ * A class responsible to display the renderer counters of the last frame.
+ * */
+public class RenderStatsWindow {
+
+    /**
+     * Displays the ImGui render stats window.
+     */
+    public void imgui() {
+        ImGui.begin("Render Stats");
+
+        ImGui.text("Sprite path: " + (Settings.INSTANCED_SPRITES ? "Instanced" : "Batched"));
+        ImGui.text("Render time: " + String.format("%.3f ms", RenderStats.getRenderMillis()));
+        ImGui.text("Vertex build time: " + String.format("%.3f ms", RenderStats.getPrepareMillis()));
+        if (ImGui.checkbox("Parallel vertex build", Settings.PARALLEL_VERTEX_BUILD)) {
+            Settings.PARALLEL_VERTEX_BUILD = !Settings.PARALLEL_VERTEX_BUILD;
+        }
+        if (ImGui.checkbox("Thick debug lines", Settings.THICK_DEBUG_LINES)) {
+            Settings.THICK_DEBUG_LINES = !Settings.THICK_DEBUG_LINES;
+        }
+        if (ImGui.checkbox("Dynamic resolution", Settings.DYNAMIC_RESOLUTION)) {
+            Settings.DYNAMIC_RESOLUTION = !Settings.DYNAMIC_RESOLUTION;
+        }
+        Framebuffer framebuffer = Window.getFramebuffer();
+        ImGui.text("Render scale: " + String.format("%.2f", DynamicResolution.getScale()) +
+                " (" + framebuffer.getWidth() + "x" + framebuffer.getHeight() + ")");
+        if (DynamicResolution.getGpuMillis() >= 0.0f) {
+            ImGui.text("GPU time: " + String.format("%.3f ms", DynamicResolution.getGpuMillis()));
+        }
+        ImGui.text("Draw calls: " + RenderStats.getDrawCalls());
+        ImGui.text("GL calls: " + RenderStats.getGlCalls());
+        ImGui.text("GL calls skipped: " + RenderStats.getSkippedGlCalls());
+        ImGui.text("Sprites drawn: " + RenderStats.getSpritesDrawn());
+        ImGui.text("Batches culled: " + RenderStats.getCulledBatches());
+        ImGui.text("Sprites culled: " + RenderStats.getSpritesCulled());
+        ImGui.text("Vertex uploads: " + RenderStats.getUploads());
+        ImGui.text("Bytes uploaded: " + RenderStats.getBytesUploaded());
+
+        ImGui.end();
+    }
+}
@@ -7,6 +7,10 @@ import org.joml.Vector4f;
 
 /**
  * A class responsible to create and manage the camera matrix.
+ *
+ * The view matrix and its inverse are only recomputed when the position of the camera moved, the projection
+ * matrix only when the zoom or the projection size changed, and every change of the matrices bumps a version,
+ * so the camera uniform buffer is only written in the frames that need it.
  * */
 public class Camera {
     private Matrix4f projectionMatrix, viewMatrix, inverseProjection, inverseView;
@@ -16,6 +20,15 @@ public class Camera {
     private Vector2f projectionSize = new Vector2f(projectionWidth, projectionHeight);
     public Vector2f position;
     private float zoom = 1.0f;
+    // Position the view matrix was last computed for, and the number of changes of the matrices
+    private final Vector2f viewPosition = new Vector2f(Float.NaN, Float.NaN);
+    private final Vector3f eye = new Vector3f();
+    private final Vector3f center = new Vector3f();
+    private final Vector3f up = new Vector3f(0.0f, 1.0f, 0.0f);
+    // Zoom and projection size the projection matrix was last computed for
+    private float projectedZoom = Float.NaN;
+    private final Vector2f projectedSize = new Vector2f(Float.NaN, Float.NaN);
+    private int version = 0;
 
     public Camera(Vector2f position){
         this.position = position;
@@ -28,12 +41,32 @@ public class Camera {
 
     /**
      * Adjusts the projection matrix based on the current zoom level and projection size.
+     * This method is called every frame, so it does nothing when neither of them changed since the last call.
      */
     public void adjustProjection() {
+        if (zoom == projectedZoom && projectionSize.equals(projectedSize)) {
+            return;
+        }
+        projectedZoom = zoom;
+        projectedSize.set(projectionSize);
         projectionMatrix.identity();
         projectionMatrix.ortho(0.0f,projectionSize.x * this.zoom,
                 0.0f, projectionSize.y * this.zoom, 0.0f, 100.0f);
-        inverseProjection = new Matrix4f(this.projectionMatrix).invert();
+        projectionMatrix.invert(inverseProjection);
+        version++;
+    }
+
+    /**
+     * Recomputes the view matrix and its inverse if the camera moved since they were last computed.
+     */
+    private void updateView() {
+        if (viewPosition.equals(position)) return;
+        viewPosition.set(position);
+        eye.set(position.x, position.y, 20.0f);
+        center.set(position.x, position.y, -1.0f);
+        viewMatrix.setLookAt(eye, center, up);
+        viewMatrix.invert(inverseView);
+        version++;
     }
 
     /**
@@ -42,16 +75,20 @@ public class Camera {
      * @return The view matrix.
      */
     public Matrix4f getViewMatrix(){
-        Vector3f cameraFront = new Vector3f(0.0f, 0.0f, -1.0f);
-        Vector3f cameraUp = new Vector3f(0.0f, 1.0f, 0.0f);
-        this.viewMatrix.identity();
-        viewMatrix.lookAt(new Vector3f(position.x, position.y, 20.0f),
-                cameraFront.add(position.x, position.y, 0.0f),
-                cameraUp);
-        inverseView = new Matrix4f(this.viewMatrix).invert();
+        updateView();
         return this.viewMatrix;
     }
 
+    /**
+     * Returns the number of times the projection or view matrix changed.
+     *
+     * @return The version of the matrices.
+     */
+    public int getVersion() {
+        updateView();
+        return version;
+    }
+
     /**
      * Retrieves the projection matrix.
      *
@@ -76,6 +113,7 @@ public class Camera {
      * @return The inverse view matrix.
      */
     public Matrix4f getInverseView() {
+        updateView();
         return this.inverseView;
     }
 
@@ -115,6 +153,22 @@ public class Camera {
         this.zoom += value;
     }
 
+    /**
+     * Checks if an axis-aligned box in world space overlaps the area seen by the camera.
+     *
+     * @param minX The left edge of the box.
+     * @param minY The bottom edge of the box.
+     * @param maxX The right edge of the box.
+     * @param maxY The top edge of the box.
+     * @return True if any part of the box is visible, false otherwise.
+     */
+    public boolean isVisible(float minX, float minY, float maxX, float maxY) {
+        float width = projectionSize.x * zoom;
+        float height = projectionSize.y * zoom;
+        return maxX >= position.x && minX <= position.x + width &&
+                maxY >= position.y && minY <= position.y + height;
+    }
+
     /**
      * Retrieves the clear color for rendering.
      *
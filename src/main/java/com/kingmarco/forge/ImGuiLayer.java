@@ -3,6 +3,7 @@ package com.kingmarco.forge;
 import com.kingmarco.editor.GameViewWindow;
 import com.kingmarco.editor.MenuBar;
 import com.kingmarco.editor.PropertiesWindow;
+import com.kingmarco.editor.RenderStatsWindow;
 import com.kingmarco.editor.SceneHierarchyWindow;
 import com.kingmarco.renderer.PickingTexture;
 import com.kingmarco.scenes.Scene;
@@ -37,6 +38,7 @@ public class ImGuiLayer {
     private PropertiesWindow propertiesWindow;
     private MenuBar menuBar;
     private SceneHierarchyWindow sceneHierarchyWindow;
+    private RenderStatsWindow renderStatsWindow;
 
     public ImGuiLayer(long glfwWindow, PickingTexture pickingTexture){
         this.glfwWindow = glfwWindow;
@@ -44,6 +46,7 @@ public class ImGuiLayer {
         this.propertiesWindow = new PropertiesWindow(pickingTexture);
         this.menuBar = new MenuBar();
         this.sceneHierarchyWindow = new SceneHierarchyWindow();
+        this.renderStatsWindow = new RenderStatsWindow();
     }
 
     public GameViewWindow getGameViewWindow() {
@@ -185,6 +188,7 @@ public class ImGuiLayer {
         gameViewWindow.imgui();
         propertiesWindow.imgui();
         sceneHierarchyWindow.imgui();
+        renderStatsWindow.imgui();
 
         endFrame();
     }
@@ -335,6 +335,15 @@ public class MouseListener {
         get().gameViewportSize.set(gameViewportSize);
     }
 
+    /**
+     * Returns the game viewport size.
+     *
+     * @return The size of the game viewport, zero until the editor laid it out.
+     */
+    public static Vector2f getGameViewportSize() {
+        return get().gameViewportSize;
+    }
+
     /**
      * Sets the game viewport distance.
      *
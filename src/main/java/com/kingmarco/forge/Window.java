@@ -11,7 +11,8 @@ import com.kingmarco.GameFunctionality.LevelGameSceneInitializer;
 import com.kingmarco.scenes.Scene;
 import com.kingmarco.scenes.SceneInitializer;
 import com.kingmarco.util.AssetPool;
-import org.joml.Vector4f;
+import com.kingmarco.util.Settings;
+import org.joml.Vector2f;
 import org.lwjgl.Version;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.openal.*;
@@ -156,6 +157,11 @@ public class Window implements Observer {
         glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
         glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
         glfwWindowHint(GLFW_MAXIMIZED, GLFW_TRUE);
+        // The shaders and the ImGui backend are written for OpenGL 3.3 core
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
+        glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+        glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GLFW_TRUE);
 
 
         // Create the window
@@ -199,12 +205,15 @@ public class Window implements Observer {
         // bindings available for use.
         GL.createCapabilities();
 
+        // Size the sampler arrays of the shaders to the texture units of the hardware
+        Shader.define("MAX_TEXTURE_SLOTS", Integer.toString(RenderBatch.getMaxTextureSlots()));
+
         // Blend the images
         glEnable(GL_BLEND);
         glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
 
         this.framebuffer = new Framebuffer(finalWidth, finalHeight);
-        this.pickingTexture = new PickingTexture(finalWidth, finalHeight);
+        this.pickingTexture = new PickingTexture(framebuffer);
         glViewport(0, 0, finalWidth, finalHeight);
 
         this.imGuiLayer = new ImGuiLayer(glfwWindow, pickingTexture);
@@ -247,8 +256,7 @@ public class Window implements Observer {
      * This method performs the following operations in each iteration of the loop:
      * Changes the audio device if necessary.
      * Polls for events.
-     * Renders the current scene to a picking texture (for object picking).
-     * Renders the actual game scene.
+     * Renders the actual game scene, with the entity ids for object picking in the same pass.
      * Updates ImGuiLayer.
      * Ends the frame for KeyListener and MouseListener.
      * Swaps the buffers.
@@ -259,8 +267,12 @@ public class Window implements Observer {
         float beginTime = (float) glfwGetTime();
         float endTime;
         float dt = -1.0f;
-        Shader defaultShader = AssetPool.getShader("assets/shaders/default.glsl");
-        Shader pickingShader = AssetPool.getShader("assets/shaders/pickingShader.glsl");
+        // The sprite path is chosen once at startup, every render batch matches these shaders
+        Shader defaultShader = Settings.INSTANCED_SPRITES ?
+                AssetPool.getShader("assets/shaders/instanced.glsl") :
+                AssetPool.getShader("assets/shaders/default.glsl");
+        // Tilemaps are always built from quads
+        Shader tilemapShader = AssetPool.getShader("assets/shaders/default.glsl");
 
         currentScene.start();
         while (!glfwWindowShouldClose(glfwWindow)){
@@ -269,40 +281,38 @@ public class Window implements Observer {
 
             // Poll events
             glfwPollEvents();
+            RenderStats.beginFrame();
+            // Deliver the picks whose pixels arrived since the last frame
+            pickingTexture.pollResults();
 
-            // Render pass 1. Render to picking texture
-            glDisable(GL_BLEND);
-            pickingTexture.enableWriting();
-
-            glViewport(0, 0, finalWidth, finalHeight);
-            glClearColor(0,0,0,0);
-            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-
-            Renderer.bindShader(pickingShader);
-            currentScene.render();
-
-            pickingTexture.disableWriting();
-            glEnable(GL_BLEND);
-
-            // Render pass 2. Render actual game
+            // Render actual game, the sprites write their entity ids to the second attachment
             DebugDraw.beginFrame();
 
+            // The framebuffer follows the size of the game viewport, scaled by the render scale
+            resizeFramebuffer();
             this.framebuffer.bind();
-            Vector4f clearColor = currentScene.camera().getClearColor();
-            glClearColor(clearColor.x, clearColor.y, clearColor.z, clearColor.w);
-            glClear(GL_COLOR_BUFFER_BIT);
+            DynamicResolution.beginFrame();
+            this.framebuffer.clear(currentScene.camera().getClearColor());
 
             if (dt >= 0) {
                 Renderer.bindShader(defaultShader);
+                Renderer.bindTilemapShader(tilemapShader);
                 if (runtimePlaying) {
                     currentScene.update(dt);
                 } else {
                     currentScene.editorUpdate(dt);
                 }
+                CameraBuffer.update(currentScene.camera());
                 currentScene.render();
+                this.framebuffer.drawColorOnly();
                 DebugDraw.draw();
             }
+            DynamicResolution.endFrame();
 
+            // Read the entity ids only in the frames where the editor requested a pick
+            if (pickingTexture.hasPendingRequests()) {
+                pickingTexture.readRequests();
+            }
             this.framebuffer.unbind();
 
             this.imGuiLayer.update(dt, currentScene);
@@ -317,6 +327,19 @@ public class Window implements Observer {
         }
     }
 
+    /**
+     * Resizes the framebuffer to the size of the game viewport multiplied by the render scale.
+     * Until the editor laid out the game viewport, the final size of the window is used.
+     */
+    private void resizeFramebuffer() {
+        Vector2f viewportSize = MouseListener.getGameViewportSize();
+        float viewportWidth = viewportSize.x >= 1.0f ? viewportSize.x : finalWidth;
+        float viewportHeight = viewportSize.y >= 1.0f ? viewportSize.y : finalHeight;
+        float scale = DynamicResolution.getScale();
+        this.framebuffer.resize(Math.max(1, Math.round(viewportWidth * scale)),
+                Math.max(1, Math.round(viewportHeight * scale)));
+    }
+
     /**
      * Returns the width of the window.
      *
@@ -2,26 +2,18 @@ package com.kingmarco.physics2d.components;
 
 import com.kingmarco.components.Component;
 import com.kingmarco.renderer.DebugDraw;
-import com.kingmarco.renderer.DrawLines;
 import org.joml.Vector2f;
-import org.joml.Vector3f;
 
 /**
  * The Box2DCollider class extends Component and represents a box-shaped 2D collider.
  *
  * This class contains properties for the half size, origin, and offset of the collider,
- * as well as a DrawLines instance for visualizing the collider.
+ * and draws the collider with {@link DebugDraw} in the editor.
  */
 public class Box2DCollider extends Component {
     private Vector2f halfSize = new Vector2f(1);
     private Vector2f origin = new Vector2f();
     private Vector2f offset = new Vector2f();
-    private transient DrawLines drawLines = new DrawLines(2);
-
-    public Box2DCollider() {
-        drawLines.start();
-        DebugDraw.addDrawLines(drawLines);
-    }
 
     /**
      * Returns the offset of the collider.
@@ -71,14 +63,14 @@ public class Box2DCollider extends Component {
     /**
      * Updates the collider in the editor.
      *
-     * This method calculates the center of the collider, adds a box to the DrawLines instance,
-     * and updates the DrawLines instance.
+     * This method calculates the center of the collider and adds a box to the debug shapes.
      *
      * @param dt The time passed since the last frame.
      */
     @Override
     public void editorUpdate(float dt) {
-        Vector2f center = new Vector2f(this.gameObject.transform.position).add(this.offset);
-        drawLines.addBox2D(center, this.halfSize, this.gameObject.transform.rotation, new Vector3f(0f, 0f, 1f));
+        Vector2f position = this.gameObject.transform.position;
+        DebugDraw.box(position.x + offset.x, position.y + offset.y, halfSize.x, halfSize.y,
+                this.gameObject.transform.rotation, DebugDraw.BLUE, 1, 2);
     }
 }
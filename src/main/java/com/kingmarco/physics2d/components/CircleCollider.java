@@ -3,25 +3,17 @@ package com.kingmarco.physics2d.components;
 
 import com.kingmarco.components.Component;
 import com.kingmarco.renderer.DebugDraw;
-import com.kingmarco.renderer.DrawLines;
 import org.joml.Vector2f;
-import org.joml.Vector3f;
 
 /**
  * The CircleCollider class extends Component and represents a circle-shaped 2D collider.
  *
  * This class contains properties for the radius and offset of the collider,
- * as well as a DrawLines instance for visualizing the collider.
+ * and draws the collider with {@link DebugDraw} in the editor.
  */
 public class CircleCollider extends Component {
     private float radius = 1f;
     private Vector2f offset = new Vector2f();
-    private transient DrawLines drawLines = new DrawLines(2);
-
-    public CircleCollider() {
-        drawLines.start();
-        DebugDraw.addDrawLines(drawLines);
-    }
 
     /**
      * Returns the offset of the collider.
@@ -62,13 +54,13 @@ public class CircleCollider extends Component {
     /**
      * Updates the collider in the editor.
      *
-     * This method calculates the center of the collider and adds a circle to the DrawLines instance.
+     * This method calculates the center of the collider and adds a circle to the debug shapes.
      *
      * @param dt The time passed since the last frame.
      */
     @Override
     public void editorUpdate(float dt) {
-        Vector2f center = new Vector2f(this.gameObject.transform.position).add(this.offset);
-        drawLines.addCircle(center, radius);
+        Vector2f position = this.gameObject.transform.position;
+        DebugDraw.circle(position.x + offset.x, position.y + offset.y, radius, DebugDraw.GREEN, 1, 2);
     }
 }
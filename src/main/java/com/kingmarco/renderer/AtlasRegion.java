@@ -0,0 +1,94 @@
+package com.kingmarco.renderer;
+
+/**
+ * The AtlasRegion class describes where a texture was packed inside a page of the {@link TextureAtlas}.
+ *
+ * Only the trimmed part of the texture, without its transparent borders, is stored in the page.
+ * This class provides methods to clamp texture coordinates of the source texture to the trimmed part,
+ * and to map them into the coordinates of the page.
+ */
+public class AtlasRegion {
+    private final Texture page;
+    private final int sourceWidth, sourceHeight;
+    private final int trimX, trimY, trimWidth, trimHeight;
+    private final int pageX, pageY;
+
+    /**
+     * Constructs an AtlasRegion.
+     *
+     * @param page The page that holds the texture.
+     * @param sourceWidth The width of the source texture.
+     * @param sourceHeight The height of the source texture.
+     * @param trimX The first column of the source texture that is not transparent.
+     * @param trimY The first row of the source texture that is not transparent.
+     * @param trimWidth The width of the trimmed part.
+     * @param trimHeight The height of the trimmed part.
+     * @param pageX The column of the page where the trimmed part starts.
+     * @param pageY The row of the page where the trimmed part starts.
+     */
+    public AtlasRegion(Texture page, int sourceWidth, int sourceHeight, int trimX, int trimY,
+                       int trimWidth, int trimHeight, int pageX, int pageY) {
+        this.page = page;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.trimX = trimX;
+        this.trimY = trimY;
+        this.trimWidth = trimWidth;
+        this.trimHeight = trimHeight;
+        this.pageX = pageX;
+        this.pageY = pageY;
+    }
+
+    /**
+     * Clamps a horizontal texture coordinate of the source texture to the trimmed part.
+     *
+     * @param u The horizontal texture coordinate.
+     * @return The clamped coordinate.
+     */
+    public float clampU(float u) {
+        float min = trimX / (float) sourceWidth;
+        float max = (trimX + trimWidth) / (float) sourceWidth;
+        return Math.max(min, Math.min(max, u));
+    }
+
+    /**
+     * Clamps a vertical texture coordinate of the source texture to the trimmed part.
+     *
+     * @param v The vertical texture coordinate.
+     * @return The clamped coordinate.
+     */
+    public float clampV(float v) {
+        float min = trimY / (float) sourceHeight;
+        float max = (trimY + trimHeight) / (float) sourceHeight;
+        return Math.max(min, Math.min(max, v));
+    }
+
+    /**
+     * Maps a horizontal texture coordinate of the source texture into the page.
+     *
+     * @param u The horizontal texture coordinate, inside the trimmed part.
+     * @return The coordinate in the page.
+     */
+    public float mapU(float u) {
+        return (pageX + u * sourceWidth - trimX) / page.getWidth();
+    }
+
+    /**
+     * Maps a vertical texture coordinate of the source texture into the page.
+     *
+     * @param v The vertical texture coordinate, inside the trimmed part.
+     * @return The coordinate in the page.
+     */
+    public float mapV(float v) {
+        return (pageY + v * sourceHeight - trimY) / page.getHeight();
+    }
+
+    /**
+     * Returns the page that holds the texture.
+     *
+     * @return The page texture.
+     */
+    public Texture getPage() {
+        return page;
+    }
+}
@@ -0,0 +1,69 @@
+package com.kingmarco.renderer;
+
+import com.kingmarco.forge.Camera;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * The CameraBuffer class holds the matrices of the camera in a uniform buffer shared by every shader.
+ *
+ * The buffer has the std140 layout of the "Camera" block of the shaders, the projection matrix followed by
+ * the view matrix, and is bound to {@link #BINDING}. Every shader links its block to that binding point,
+ * so the matrices are written once per frame, and only when the camera changed, instead of being
+ * uploaded to every shader that draws.
+ */
+public class CameraBuffer {
+    public static final String BLOCK_NAME = "Camera";
+    public static final int BINDING = 0;
+    private static final int SIZE_BYTES = 2 * 16 * Float.BYTES;
+
+    private static final FloatBuffer data = BufferUtils.createFloatBuffer(2 * 16);
+    private static int uboID = -1;
+    private static Camera writtenCamera = null;
+    private static int writtenVersion = -1;
+
+    /**
+     * Writes the matrices of a camera into the buffer, unless they did not change since the last write.
+     *
+     * @param camera The camera of the scene.
+     */
+    public static void update(Camera camera) {
+        if (uboID < 0) {
+            uboID = glGenBuffers();
+            glBindBuffer(GL_UNIFORM_BUFFER, uboID);
+            glBufferData(GL_UNIFORM_BUFFER, SIZE_BYTES, GL_DYNAMIC_DRAW);
+            glBindBufferBase(GL_UNIFORM_BUFFER, BINDING, uboID);
+        } else if (camera == writtenCamera && camera.getVersion() == writtenVersion) {
+            RenderStats.addSkippedGlCall();
+            return;
+        }
+
+        camera.getProjectionMatrix().get(0, data);
+        camera.getViewMatrix().get(16, data);
+        writtenCamera = camera;
+        writtenVersion = camera.getVersion();
+
+        glBindBuffer(GL_UNIFORM_BUFFER, uboID);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, data);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        RenderStats.addGlCall();
+    }
+
+    /**
+     * Links the camera block of a shader program to the binding point of the buffer.
+     * Programs without the block are left untouched.
+     *
+     * @param programID The ID of the linked program.
+     */
+    public static void bindBlock(int programID) {
+        int blockIndex = glGetUniformBlockIndex(programID, BLOCK_NAME);
+        if (blockIndex != GL_INVALID_INDEX) {
+            glUniformBlockBinding(programID, blockIndex, BINDING);
+        }
+    }
+}
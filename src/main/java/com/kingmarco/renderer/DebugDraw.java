@@ -1,74 +1,200 @@
 package com.kingmarco.renderer;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
- * The DebugDraw class handles the drawing of debug lines.
+ * The DebugDraw class handles the drawing of debug lines and shapes.
  *
- * This class maintains a list of DrawLines instances and provides methods to begin a frame, draw the lines, add and remove DrawLines instances.
+ * This class owns one {@link DrawLines} layer and one {@link DrawShapes} layer per zIndex, created the first time
+ * something is drawn on them, and provides methods to begin a frame, draw the layers and add lines, boxes, circles,
+ * capsules and arrows to them. Lines are drawn as segments, the other shapes as a single instance evaluated with
+ * a signed distance in the fragment shader. The shapes are given as primitive values and colors as 0xRRGGBB,
+ * with the opacity of the fill in the alpha byte of 0xAARRGGBB, so callers do not allocate vectors.
+ * Components add their shapes every frame instead of owning a DrawLines, so the memory of the debug shapes
+ * is bounded by the number of layers, and every layer is uploaded and drawn once per frame.
+ * The grid of the editor is not made of lines, it is requested every frame and drawn by a {@link DebugGrid}
+ * behind the layers.
  */
 public class DebugDraw {
-    private static List<DrawLines> drawLines = new ArrayList<>();
+    public static final int RED = 0xFF0000;
+    public static final int GREEN = 0x00FF00;
+    public static final int BLUE = 0x0000FF;
+    // Sorted by zIndex, so the layers are drawn from back to front. There are only a few layers,
+    // so they are searched linearly, without boxing the zIndex
+    private static final List<DrawLines> layers = new ArrayList<>();
+    private static final List<DrawShapes> shapeLayers = new ArrayList<>();
+    private static DebugGrid grid = null;
+    private static boolean gridRequested = false;
+    private static int gridColor = 0;
 
     /**
-     * Begins a frame for each DrawLines instance in the list.
+     * Begins a frame for every layer.
      *
-     * This method iterates over the DrawLines instances in the list and calls their beginFrame method.
+     * This method removes the lines that expired from every layer, and the grid requested in the last frame.
      */
     public static void beginFrame() {
-        if (drawLines.size() <= 0) return;
-        for (int i=0; i < drawLines.size(); i++){
-            drawLines.get(i).beginFrame();
+        gridRequested = false;
+        for (int i = 0; i < layers.size(); i++) {
+            layers.get(i).beginFrame();
+        }
+        for (int i = 0; i < shapeLayers.size(); i++) {
+            shapeLayers.get(i).beginFrame();
         }
     }
 
     /**
-     * Draws each DrawLines instance in the list.
+     * Draws every layer.
      *
-     * This method iterates over the DrawLines instances in the list and calls their draw method.
+     * This method draws the grid if it was requested in this frame, then iterates over the layers
+     * from the lowest to the highest zIndex and draws them, the shapes of a zIndex before its lines.
      */
     public static void draw() {
-        if (drawLines.size() <= 0) return;
-        for (DrawLines lines : drawLines){
-            lines.draw();
+        if (gridRequested) {
+            if (grid == null) {
+                grid = new DebugGrid();
+            }
+            grid.draw(gridColor);
+        }
+        int line = 0;
+        int shape = 0;
+        while (line < layers.size() || shape < shapeLayers.size()) {
+            if (line >= layers.size() ||
+                    (shape < shapeLayers.size() && shapeLayers.get(shape).getzIndex() <= layers.get(line).getzIndex())) {
+                shapeLayers.get(shape++).draw();
+            } else {
+                layers.get(line++).draw();
+            }
+        }
+    }
+
+    /**
+     * Returns the layer of a zIndex, creating it if needed.
+     *
+     * @param zIndex The zIndex of the layer.
+     * @return The layer.
+     */
+    private static DrawLines getLayer(int zIndex) {
+        int index = 0;
+        while (index < layers.size() && layers.get(index).getzIndex() < zIndex) {
+            index++;
+        }
+        if (index < layers.size() && layers.get(index).getzIndex() == zIndex) {
+            return layers.get(index);
+        }
+
+        DrawLines layer = new DrawLines(zIndex);
+        layers.add(index, layer);
+        return layer;
+    }
+
+    /**
+     * Returns the shape layer of a zIndex, creating it if needed.
+     *
+     * @param zIndex The zIndex of the layer.
+     * @return The layer.
+     */
+    private static DrawShapes getShapeLayer(int zIndex) {
+        int index = 0;
+        while (index < shapeLayers.size() && shapeLayers.get(index).getzIndex() < zIndex) {
+            index++;
+        }
+        if (index < shapeLayers.size() && shapeLayers.get(index).getzIndex() == zIndex) {
+            return shapeLayers.get(index);
         }
+
+        DrawShapes layer = new DrawShapes(zIndex);
+        shapeLayers.add(index, layer);
+        return layer;
     }
 
     /**
-     * Adds a DrawLines instance to the list.
+     * Requests the grid of the editor to be drawn in this frame, behind every layer.
      *
-     * This method adds a DrawLines instance to the list and sorts the list.
+     * @param rgb The color of the grid, as 0xRRGGBB.
+     */
+    public static void grid(int rgb) {
+        gridRequested = true;
+        gridColor = rgb;
+    }
+
+    /**
+     * Adds a line to be drawn from one point to another with a specified color, lifetime, and zIndex.
      *
-     * @param drawLine The DrawLines instance to be added.
+     * @param x1 The horizontal position of the start of the line.
+     * @param y1 The vertical position of the start of the line.
+     * @param x2 The horizontal position of the end of the line.
+     * @param y2 The vertical position of the end of the line.
+     * @param rgb The color of the line, as 0xRRGGBB.
+     * @param lifeTime The number of frames the line is drawn for.
+     * @param zIndex The zIndex of the line.
      */
-    public static void addDrawLines(DrawLines drawLine){
-        DebugDraw.drawLines.add(drawLine);
-        Collections.sort(DebugDraw.drawLines);
+    public static void line(float x1, float y1, float x2, float y2, int rgb, int lifeTime, int zIndex) {
+        getLayer(zIndex).line(x1, y1, x2, y2, rgb, lifeTime);
     }
 
     /**
-     * Removes a DrawLines instance from the list.
+     * Adds a box to be drawn at a specified center with specified dimensions, rotation, color, lifetime and zIndex.
      *
-     * This method removes a DrawLines instance from the list and sorts the list.
+     * @param centerX The horizontal position of the center of the box.
+     * @param centerY The vertical position of the center of the box.
+     * @param width The width of the box.
+     * @param height The height of the box.
+     * @param rotation The rotation of the box in degrees.
+     * @param argb The color of the box as 0xAARRGGBB, where the alpha is the opacity of the fill.
+     * @param lifeTime The number of frames the box is drawn for.
+     * @param zIndex The zIndex of the box.
+     */
+    public static void box(float centerX, float centerY, float width, float height, float rotation,
+                           int argb, int lifeTime, int zIndex) {
+        getShapeLayer(zIndex).box(centerX, centerY, width, height, rotation, argb, lifeTime);
+    }
+
+    /**
+     * Adds a circle to be drawn at a specified center with a specified radius, color, lifetime and zIndex.
      *
-     * @param drawLine The DrawLines instance to be removed.
+     * @param centerX The horizontal position of the center of the circle.
+     * @param centerY The vertical position of the center of the circle.
+     * @param radius The radius of the circle.
+     * @param argb The color of the circle as 0xAARRGGBB, where the alpha is the opacity of the fill.
+     * @param lifeTime The number of frames the circle is drawn for.
+     * @param zIndex The zIndex of the circle.
      */
-    public static void removeDrawLines(DrawLines drawLine){
-        DebugDraw.drawLines.remove(drawLine);
-        Collections.sort(DebugDraw.drawLines);
+    public static void circle(float centerX, float centerY, float radius, int argb, int lifeTime, int zIndex) {
+        getShapeLayer(zIndex).circle(centerX, centerY, radius, argb, lifeTime);
     }
 
     /**
-     * Removes a DrawLines instance from the list by index.
+     * Adds a capsule to be drawn around a segment with a specified radius, color, lifetime and zIndex.
      *
-     * This method removes a DrawLines instance from the list at the specified index and sorts the list.
+     * @param x1 The horizontal position of the start of the segment.
+     * @param y1 The vertical position of the start of the segment.
+     * @param x2 The horizontal position of the end of the segment.
+     * @param y2 The vertical position of the end of the segment.
+     * @param radius The radius of the capsule around the segment.
+     * @param argb The color of the capsule as 0xAARRGGBB, where the alpha is the opacity of the fill.
+     * @param lifeTime The number of frames the capsule is drawn for.
+     * @param zIndex The zIndex of the capsule.
+     */
+    public static void capsule(float x1, float y1, float x2, float y2, float radius,
+                               int argb, int lifeTime, int zIndex) {
+        getShapeLayer(zIndex).capsule(x1, y1, x2, y2, radius, argb, lifeTime);
+    }
+
+    /**
+     * Adds an arrow to be drawn from one point to another with a specified head size, color, lifetime and zIndex.
      *
-     * @param index The index of the DrawLines instance to be removed.
+     * @param x1 The horizontal position of the tail of the arrow.
+     * @param y1 The vertical position of the tail of the arrow.
+     * @param x2 The horizontal position of the tip of the arrow.
+     * @param y2 The vertical position of the tip of the arrow.
+     * @param headSize The length and the width of the head of the arrow.
+     * @param rgb The color of the arrow, as 0xRRGGBB.
+     * @param lifeTime The number of frames the arrow is drawn for.
+     * @param zIndex The zIndex of the arrow.
      */
-    public static void removeDrawLines(int index){
-        DebugDraw.drawLines.remove(index);
-        Collections.sort(DebugDraw.drawLines);
+    public static void arrow(float x1, float y1, float x2, float y2, float headSize,
+                             int rgb, int lifeTime, int zIndex) {
+        getShapeLayer(zIndex).arrow(x1, y1, x2, y2, headSize, rgb, lifeTime);
     }
 }
@@ -0,0 +1,50 @@
+package com.kingmarco.renderer;
+
+import com.kingmarco.util.AssetPool;
+import com.kingmarco.util.Settings;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.glDrawArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+
+/**
+ * The DebugGrid class draws the grid of the editor procedurally.
+ *
+ * The grid is a single triangle that covers the viewport, and its fragment shader computes the lines from the
+ * world position of every pixel, {@link Settings#GRID_WIDTH} and {@link Settings#GRID_HEIGHT}. The zoom of the camera
+ * comes from the screen-space derivatives of the world position, so the lines stay one pixel wide and fade out
+ * when the cells get too small. Every {@link Settings#GRID_MAJOR_LINES} cells a major line is drawn brighter.
+ * Drawing the grid costs one draw call and no vertex data, whatever the zoom.
+ */
+public class DebugGrid {
+    private final Shader shader = AssetPool.getShader("assets/shaders/debugGrid.glsl");
+    // The vertices are built in the vertex shader, but core profiles still need a bound vao
+    private int vaoID = -1;
+    private final Vector2f cellSize = new Vector2f();
+    private final Vector3f color = new Vector3f();
+
+    /**
+     * Draws the grid over the whole viewport.
+     *
+     * @param rgb The color of the lines, as 0xRRGGBB.
+     */
+    public void draw(int rgb) {
+        if (vaoID < 0) {
+            vaoID = glGenVertexArrays();
+        }
+
+        shader.use();
+        shader.uploadVec2f("uCellSize", cellSize.set(Settings.GRID_WIDTH, Settings.GRID_HEIGHT));
+        shader.uploadFloat("uMajorEvery", Math.max(1, Settings.GRID_MAJOR_LINES));
+        color.set(((rgb >> 16) & 0xFF) / 255.0f, ((rgb >> 8) & 0xFF) / 255.0f, (rgb & 0xFF) / 255.0f);
+        shader.uploadVec3f("uColor", color);
+
+        GLState.bindVertexArray(vaoID);
+        glDrawArrays(GL_TRIANGLES, 0, 3);
+        RenderStats.addDrawCall(0);
+
+        shader.detach();
+    }
+}
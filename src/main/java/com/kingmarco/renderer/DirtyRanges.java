@@ -0,0 +1,136 @@
+package com.kingmarco.renderer;
+
+/**
+ * The DirtyRanges class keeps a small list of coalesced byte ranges that have to be uploaded to the GPU.
+ *
+ * Ranges that overlap or touch are merged when they are added. When the list is full, the two closest ranges
+ * are merged, so the number of uploads stays bounded while the amount of clean data uploaded stays small.
+ */
+public class DirtyRanges {
+    public static final int MAX_RANGES = 8;
+
+    private final int[] starts = new int[MAX_RANGES + 1];
+    private final int[] ends = new int[MAX_RANGES + 1];
+    private int count = 0;
+
+    /**
+     * Adds a byte range to the list.
+     *
+     * This method inserts the range keeping the list sorted, merges it with the ranges it overlaps or touches,
+     * and merges the two closest ranges if the list grew past its maximum size.
+     *
+     * @param start The first byte of the range.
+     * @param end The byte after the last byte of the range.
+     */
+    public void add(int start, int end) {
+        if (end <= start) return;
+
+        // Find the insertion point, keeping the ranges sorted by start
+        int index = 0;
+        while (index < count && starts[index] < start) {
+            index++;
+        }
+        for (int i = count; i > index; i--) {
+            starts[i] = starts[i - 1];
+            ends[i] = ends[i - 1];
+        }
+        starts[index] = start;
+        ends[index] = end;
+        count++;
+
+        // Merge the ranges that overlap or touch
+        int write = 0;
+        for (int read = 1; read < count; read++) {
+            if (starts[read] <= ends[write]) {
+                ends[write] = Math.max(ends[write], ends[read]);
+            } else {
+                write++;
+                starts[write] = starts[read];
+                ends[write] = ends[read];
+            }
+        }
+        count = write + 1;
+
+        if (count > MAX_RANGES) {
+            mergeClosest();
+        }
+    }
+
+    /**
+     * Adds every range of another list to this list.
+     *
+     * @param other The list of ranges to add.
+     */
+    public void addAll(DirtyRanges other) {
+        for (int i = 0; i < other.count; i++) {
+            add(other.starts[i], other.ends[i]);
+        }
+    }
+
+    /**
+     * Merges the two ranges with the smallest gap between them.
+     */
+    private void mergeClosest() {
+        int closest = 0;
+        int smallestGap = Integer.MAX_VALUE;
+        for (int i = 0; i < count - 1; i++) {
+            int gap = starts[i + 1] - ends[i];
+            if (gap < smallestGap) {
+                smallestGap = gap;
+                closest = i;
+            }
+        }
+
+        ends[closest] = ends[closest + 1];
+        for (int i = closest + 1; i < count - 1; i++) {
+            starts[i] = starts[i + 1];
+            ends[i] = ends[i + 1];
+        }
+        count--;
+    }
+
+    /**
+     * Removes every range from the list.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Checks if the list has no ranges.
+     *
+     * @return True if there is nothing to upload, false otherwise.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the number of ranges in the list.
+     *
+     * @return The number of ranges.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the first byte of a range.
+     *
+     * @param index The index of the range.
+     * @return The first byte of the range.
+     */
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * Returns the byte after the last byte of a range.
+     *
+     * @param index The index of the range.
+     * @return The end of the range.
+     */
+    public int getEnd(int index) {
+        return ends[index];
+    }
+}
@@ -2,36 +2,57 @@ package com.kingmarco.renderer;
 
 import com.kingmarco.forge.Window;
 import com.kingmarco.util.AssetPool;
+import com.kingmarco.util.Settings;
 import org.joml.Vector2f;
-import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
 import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL31.glDrawArraysInstanced;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
 
 /**
- * The DrawLines class implements the Comparable interface and handles the drawing of lines.
+ * The DrawLines class implements the Comparable interface and holds the debug lines of one zIndex layer.
  *
- * This class provides methods to start drawing, begin a frame, and draw the lines.
+ * The layers are owned by {@link DebugDraw}, which creates one per zIndex the first time a line is added to it.
+ * Every line is written straight into an off-heap buffer as an instance of 20 bytes, its start, its end and
+ * its color, with its lifetime in a parallel array. The lines are added from primitive values, so drawing
+ * them allocates nothing once the buffer reached its size. The buffer starts small and grows up to {@link #MAX_LINES},
+ * so the memory of a layer is bounded, and the whole layer is streamed and drawn with a single call.
+ * The vertex shader turns every instance into a thin GL_LINES segment, or into a quad of
+ * {@link Settings#DEBUG_LINE_WIDTH} pixels, since core profiles ignore glLineWidth.
  */
 public class DrawLines implements Comparable<DrawLines>{
-    private int MAX_LINES = 5000;
-    private List<Line2D> lines = new ArrayList<>();
-    // 6 floats per vertex, 2 vertex per line
-    private float[] vertexArray = new float[MAX_LINES * 6 * 2];
+    // Instance (20 bytes)
+    // =======
+    // From          To            Color
+    // float, float, float, float, ubyte x 4
+    private static final int FROM_OFFSET = 0;
+    private static final int TO_OFFSET = FROM_OFFSET + 2 * Float.BYTES;
+    private static final int COLOR_OFFSET = TO_OFFSET + 2 * Float.BYTES;
+    private static final int LINE_SIZE_BYTES = COLOR_OFFSET + 4;
+
+    public static final int MAX_LINES = 5000;
+    private static final int INITIAL_LINES = 256;
+
+    private ByteBuffer vertices = MemoryUtil.memAlloc(INITIAL_LINES * LINE_SIZE_BYTES);
+    private int[] lifeTimes = new int[INITIAL_LINES];
+    private int numLines = 0;
+    private final VertexStream vertexStream = new VertexStream((long) MAX_LINES * LINE_SIZE_BYTES);
+    private long boundRegionOffset = -1;
     private Shader shader = AssetPool.getShader("assets/shaders/debugLine2D.glsl");
 
     private int vaoID;
-    private int vboID;
 
     private boolean started = false;
 
     private final int zIndex;
+    private final Vector2f resolution = new Vector2f();
 
     public DrawLines(int zIndex) {
         this.zIndex = zIndex;
@@ -41,289 +62,148 @@ public class DrawLines implements Comparable<DrawLines>{
     /**
      * Starts the drawing process.
      *
-     * This method generates the Vertex Array Object (VAO), binds it, creates the Vertex Buffer Object (VBO), buffers some memory,
-     * enables the vertex array attributes, and sets the line width.
+     * This method generates the Vertex Array Object (VAO), binds it, starts the vertex stream of the lines
+     * and enables the instanced vertex array attributes.
      */
     public void start() {
         //Generate the vao
         vaoID = glGenVertexArrays();
-        glBindVertexArray(vaoID);
+        GLState.bindVertexArray(vaoID);
 
-        // Create the vbo and buffer some memory
-        vboID = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, vboID);
-        glBufferData(GL_ARRAY_BUFFER, (long) vertexArray.length * Float.BYTES, GL_DYNAMIC_DRAW);
+        // Create the stream of the lines
+        vertexStream.start();
 
-        //Enable the vertex array attributes
-        glVertexAttribPointer(0, 3, GL_FLOAT, false, 6 * Float.BYTES, 0);
-        glEnableVertexAttribArray(0);
-
-        glVertexAttribPointer(1, 3, GL_FLOAT, false, 6 * Float.BYTES, 3 * Float.BYTES);
-        glEnableVertexAttribArray(1);
+        //Enable the vertex array attributes, one value per line
+        for (int location = 0; location < 3; location++) {
+            glEnableVertexAttribArray(location);
+            glVertexAttribDivisor(location, 1);
+        }
+        bindLineAttributes(vertexStream.getRegionOffset());
+        started = true;
+    }
 
-        glLineWidth(2f);
+    /**
+     * Points the attributes to a region of the vertex stream.
+     *
+     * @param regionOffset The offset in bytes of the region.
+     */
+    private void bindLineAttributes(long regionOffset) {
+        glBindBuffer(GL_ARRAY_BUFFER, vertexStream.getVboID());
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, LINE_SIZE_BYTES, regionOffset + FROM_OFFSET);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, LINE_SIZE_BYTES, regionOffset + TO_OFFSET);
+        glVertexAttribPointer(2, 3, GL_UNSIGNED_BYTE, true, LINE_SIZE_BYTES, regionOffset + COLOR_OFFSET);
+        boundRegionOffset = regionOffset;
     }
 
     /**
      * Begins a frame for drawing.
      *
-     * This method checks if the drawing process has started, and if not, it starts the drawing process.
-     * It then removes any lines that have expired.
+     * This method decrements the lifetime of every line and removes the lines that expired in a single pass,
+     * moving the lines that are left to the front of the buffer.
      */
     public void beginFrame() {
-        if (!started){
-            start();
-            started = true;
-        }
-
-        //Remove deadlines
-        for (int i=0; i < lines.size(); i++){
-            if (lines.get(i).beginFrame() < 0){
-                lines.remove(i);
-                i--;
+        long address = MemoryUtil.memAddress(vertices);
+        int kept = 0;
+        for (int i = 0; i < numLines; i++) {
+            if (--lifeTimes[i] <= 0) continue;
+            if (kept != i) {
+                MemoryUtil.memCopy(address + (long) i * LINE_SIZE_BYTES,
+                        address + (long) kept * LINE_SIZE_BYTES, LINE_SIZE_BYTES);
+                lifeTimes[kept] = lifeTimes[i];
             }
+            kept++;
         }
+        numLines = kept;
     }
 
     /**
      * Draws the lines.
      *
-     * This method checks if there are any lines to draw, and if so,
-     * it loads the position and color of each line into the vertex array,
-     * buffers the vertex array, uses the shader, uploads the projection and view matrices to the shader, binds the VAO,
-     * enables the vertex array attributes, draws the lines, disables the vertex array attributes, unbinds the VAO, and detaches the shader.
+     * This method checks if there are any lines to draw, and if so, streams the used part of the buffer,
+     * uses the shader and draws every line as an instance, as two vertices of GL_LINES or as a quad.
      */
     public void draw() {
-        if (lines.size() <= 0) return;
-        int index = 0;
-        for (Line2D line : lines){
-            for (int i=0; i < 2; i++){
-                Vector2f position = i == 0 ? line.getFrom() : line.getTo();
-                Vector3f color = line.getColor();
-
-                //Load position
-                vertexArray[index] = position.x;
-                vertexArray[index + 1] = position.y;
-                vertexArray[index + 2] = -10.0f;
-
-                // Load the color
-                vertexArray[index + 3] = color.x;
-                vertexArray[index + 4] = color.y;
-                vertexArray[index + 5] = color.z;
-                index += 6;
-            }
+        if (numLines <= 0) return;
+        if (!started) {
+            start();
         }
-
-        glBindBuffer(GL_ARRAY_BUFFER, vboID);
-        glBufferData(GL_ARRAY_BUFFER, vertexArray, GL_DYNAMIC_DRAW);
-        //glBufferSubData(GL_ARRAY_BUFFER, 0, Arrays.copyOfRange(vertexArray,0, lines.size() * 6 * 2));
+        vertexStream.stream(vertices, numLines * LINE_SIZE_BYTES);
 
         //Use our shader
         shader.use();
-        shader.uploadMat4f("uProjection", Window.getScene().camera().getProjectionMatrix());
-        shader.uploadMat4f("uView", Window.getScene().camera().getViewMatrix());
+        float lineWidth = Settings.THICK_DEBUG_LINES ? Settings.DEBUG_LINE_WIDTH : 0.0f;
+        shader.uploadFloat("uLineWidth", lineWidth);
+        Framebuffer framebuffer = Window.getFramebuffer();
+        resolution.set(framebuffer.getWidth(), framebuffer.getHeight());
+        shader.uploadVec2f("uResolution", resolution);
 
         //Bind the vao
-        glBindVertexArray(vaoID);
-        glEnableVertexAttribArray(0);
-        glEnableVertexAttribArray(1);
-
-        //Draw the batch
-        glDrawArrays(GL_LINES, 0, lines.size());
+        GLState.bindVertexArray(vaoID);
+        long regionOffset = vertexStream.getRegionOffset();
+        if (regionOffset != boundRegionOffset) {
+            bindLineAttributes(regionOffset);
+        }
 
-        // Disable Location
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glBindVertexArray(0);
+        //Draw the lines
+        if (lineWidth > 0.0f) {
+            glDrawArraysInstanced(GL_TRIANGLE_STRIP, 0, 4, numLines);
+        } else {
+            glDrawArraysInstanced(GL_LINES, 0, 2, numLines);
+        }
+        vertexStream.fence();
+        RenderStats.addDrawCall(0);
 
         //Unbind shader
         shader.detach();
     }
 
-    // =========================================
-    // Add line2D methods
-    // =========================================
-
     /**
-     * Adds a line to be drawn from one point to another with a default color and zIndex.
+     * Adds a line to be drawn from one point to another with a specified color and lifetime.
+     * Lines beyond {@link #MAX_LINES} are dropped.
      *
-     * @param from The starting point of the line.
-     * @param to The ending point of the line.
+     * @param x1 The horizontal position of the start of the line.
+     * @param y1 The vertical position of the start of the line.
+     * @param x2 The horizontal position of the end of the line.
+     * @param y2 The vertical position of the end of the line.
+     * @param rgb The color of the line, as 0xRRGGBB.
+     * @param lifeTime The number of frames the line is drawn for.
      */
-    public void addLine2D(Vector2f from, Vector2f to) {
-        // TODO: ADD CONSTANTS FOR COMMON COLORS
-        addLine2D(from, to, new Vector3f(0, 1, 0), 1, 0);
-    }
-
-    /**
-     * Adds a line to be drawn from one point to another with a specified color and a default zIndex.
-     *
-     * @param from The starting point of the line.
-     * @param to The ending point of the line.
-     * @param color The color of the line.
-     */
-    public void addLine2D(Vector2f from, Vector2f to, Vector3f color) {
-        // TODO: ADD CONSTANTS FOR COMMON COLORS
-        addLine2D(from, to, color, 1, 0);
-    }
-
-    /**
-     * Adds a line to be drawn from one point to another with a specified zIndex and a default color.
-     *
-     * @param from The starting point of the line.
-     * @param to The ending point of the line.
-     * @param zIndex The zIndex of the line.
-     */
-    public void addLine2D(Vector2f from, Vector2f to, int zIndex) {
-        // TODO: ADD CONSTANTS FOR COMMON COLORS
-        addLine2D(from, to, new Vector3f(0, 1, 0), 1, zIndex);
-    }
-
-    /**
-     * Adds a line to be drawn from one point to another with a specified color and zIndex.
-     *
-     * @param from The starting point of the line.
-     * @param to The ending point of the line.
-     * @param color The color of the line.
-     * @param zIndex The zIndex of the line.
-     */
-    public void addLine2D(Vector2f from, Vector2f to, Vector3f color, int zIndex) {
-        // TODO: ADD CONSTANTS FOR COMMON COLORS
-        addLine2D(from, to, color, 1, zIndex);
-    }
-
-    /**
-     * Adds a line to be drawn from one point to another with a specified color, lifetime, and zIndex.
-     *
-     * @param from The starting point of the line.
-     * @param to The ending point of the line.
-     * @param color The color of the line.
-     * @param lifeTime The lifetime of the line.
-     * @param zIndex The zIndex of the line.
-     */
-    public void addLine2D(Vector2f from, Vector2f to, Vector3f color, int lifeTime, int zIndex){
-        /*Camera camera = Window.getScene().camera();
-        Vector2f cameraLeft = new Vector2f(camera.position).add(new Vector2f(-2.0f, -2.0f));
-        Vector2f cameraRight = new Vector2f(camera.position).
-                add(new Vector2f(camera.getProjectionSize()).mul(camera.getZoom())).
-                add(new Vector2f(4.0f, 4.0f));
-        boolean lineInView = ((from.x >= cameraLeft.x && from.x <= cameraRight.x) && (from.y >= cameraLeft.y && from.y <= cameraRight.y)) ||
-                ((to.x >= cameraLeft.x && to.x <= cameraRight.x) && (to.y >= cameraLeft.y && to.y <= cameraRight.y));
-        if (lines.size() >= MAX_LINES || !lineInView) return;*/
-        if (lines.size() >= MAX_LINES) return;
-        lines.add(new Line2D(from, to, color, lifeTime));
-    }
-
-    // =========================================
-    // Add Box2D methods
-    // =========================================
-
-    /**
-     * Adds a box to be drawn at a specified center with specified dimensions and rotation, and a default color.
-     *
-     * @param center The center of the box.
-     * @param dimensions The dimensions of the box.
-     * @param rotation The rotation of the box.
-     */
-    public void addBox2D(Vector2f center, Vector2f dimensions, float rotation) {
-        // TODO: ADD CONSTANTS FOR COMMON COLORS
-        addBox2D(center, dimensions, rotation, new Vector3f(0, 1, 0), 1);
-    }
-
-    /**
-     * Adds a box to be drawn at a specified center with specified dimensions, rotation, and color.
-     *
-     * @param center The center of the box.
-     * @param dimensions The dimensions of the box.
-     * @param rotation The rotation of the box.
-     * @param color The color of the box.
-     */
-    public void addBox2D(Vector2f center, Vector2f dimensions, float rotation, Vector3f color) {
-        // TODO: ADD CONSTANTS FOR COMMON COLORS
-        addBox2D(center, dimensions, rotation, color, 1);
-    }
-
-    /**
-     * Adds a box to be drawn at a specified center with specified dimensions, rotation, color, and lifetime.
-     *
-     * @param center The center of the box.
-     * @param dimensions The dimensions of the box.
-     * @param rotation The rotation of the box.
-     * @param color The color of the box.
-     * @param lifeTime The lifetime of the box.
-     */
-    public void addBox2D(Vector2f center, Vector2f dimensions, float rotation, Vector3f color, int lifeTime){
-        Vector2f min = new Vector2f(center).sub(new Vector2f(dimensions).mul(0.5f));
-        Vector2f max = new Vector2f(center).add(new Vector2f(dimensions).mul(0.5f));
-
-        Vector2f[] vertices = {
-                new Vector2f(min.x, min.y), new Vector2f(min.x, max.y),
-                new Vector2f(max.x, max.y), new Vector2f(max.x, min.y)
-        };
-
-        if (rotation != 0.0f) {
-            for (Vector2f vert : vertices) {
-                MathForms.rotate(vert, rotation, center);
-            }
+    public void line(float x1, float y1, float x2, float y2, int rgb, int lifeTime){
+        if (numLines >= MAX_LINES) return;
+        if (numLines == lifeTimes.length) {
+            int capacity = Math.min(MAX_LINES, lifeTimes.length * 2);
+            vertices = MemoryUtil.memRealloc(vertices, capacity * LINE_SIZE_BYTES);
+            lifeTimes = Arrays.copyOf(lifeTimes, capacity);
         }
 
-        addLine2D(vertices[0], vertices[1], color, lifeTime, 1);
-        addLine2D(vertices[0], vertices[3], color, lifeTime, 1);
-        addLine2D(vertices[1], vertices[2], color, lifeTime, 1);
-        addLine2D(vertices[2], vertices[3], color, lifeTime, 1);
-    }
-
-    // =========================================
-    // Add Circle methods
-    // =========================================
-
-    /**
-     * Adds a circle to be drawn at a specified center with a specified radius and a default color.
-     *
-     * @param center The center of the circle.
-     * @param radius The radius of the circle.
-     */
-    public void addCircle(Vector2f center, float radius) {
-        // TODO: ADD CONSTANTS FOR COMMON COLORS
-        addCircle(center, radius, new Vector3f(0, 1, 0), 1);
+        int offset = numLines * LINE_SIZE_BYTES;
+        vertices.putFloat(offset + FROM_OFFSET, x1);
+        vertices.putFloat(offset + FROM_OFFSET + Float.BYTES, y1);
+        vertices.putFloat(offset + TO_OFFSET, x2);
+        vertices.putFloat(offset + TO_OFFSET + Float.BYTES, y2);
+        vertices.put(offset + COLOR_OFFSET, (byte) (rgb >> 16));
+        vertices.put(offset + COLOR_OFFSET + 1, (byte) (rgb >> 8));
+        vertices.put(offset + COLOR_OFFSET + 2, (byte) rgb);
+        lifeTimes[numLines] = lifeTime;
+        numLines++;
     }
 
     /**
-     * Adds a circle to be drawn at a specified center with a specified radius and color.
+     * Returns the zIndex of the layer.
      *
-     * @param center The center of the circle.
-     * @param radius The radius of the circle.
-     * @param color The color of the circle.
+     * @return The zIndex of the layer.
      */
-    public void addCircle(Vector2f center, float radius, Vector3f color) {
-        // TODO: ADD CONSTANTS FOR COMMON COLORS
-        addCircle(center, radius, color, 1);
+    public int getzIndex() {
+        return zIndex;
     }
 
     /**
-     * Adds a circle to be drawn at a specified center with a specified radius, color, and lifetime.
+     * Returns the number of lines of the layer.
      *
-     * @param center The center of the circle.
-     * @param radius The radius of the circle.
-     * @param color The color of the circle.
-     * @param lifeTime The lifetime of the circle.
+     * @return The number of lines.
      */
-    public void addCircle(Vector2f center, float radius, Vector3f color, int lifeTime){
-        Vector2f[] points = new Vector2f[50];
-        int increment = 360 / points.length;
-        int currentAngle = 0;
-
-        for (int i=0; i < points.length; i++){
-            Vector2f tmp = new Vector2f(radius, 0);
-            MathForms.rotate(tmp, currentAngle, new Vector2f());
-            points[i] = new Vector2f(tmp).add(center);
-
-            if (i > 0) {
-                addLine2D(points[i - 1], points[i], color, lifeTime, 1);
-            }
-            currentAngle += increment;
-        }
-        addLine2D(points[points.length - 1], points[0], color, lifeTime, 1);
+    public int getNumLines() {
+        return numLines;
     }
 
     /**
@@ -0,0 +1,309 @@
+package com.kingmarco.renderer;
+
+import com.kingmarco.forge.Window;
+import com.kingmarco.util.AssetPool;
+import com.kingmarco.util.Settings;
+import org.joml.Vector2f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL30.glVertexAttribIPointer;
+import static org.lwjgl.opengl.GL31.glDrawArraysInstanced;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+/**
+ * The DrawShapes class holds the debug shapes of one zIndex layer, circles, boxes, capsules and arrows.
+ *
+ * The layers are owned by {@link DebugDraw}, next to the layers of lines. Every shape is a single instance of
+ * 32 bytes, its center, its size, its orientation, its color and its kind, written straight into an off-heap
+ * buffer with its lifetime in a parallel array, like the lines of {@link DrawLines}. The vertex shader turns every
+ * instance into a quad that bounds the shape, and the fragment shader evaluates the signed distance to the shape,
+ * so the outline and the fill are antialiased and a circle costs one instance instead of dozens of lines.
+ * The outline is {@link Settings#DEBUG_LINE_WIDTH} pixels wide, or one pixel without thick debug lines.
+ */
+public class DrawShapes {
+    public static final int CIRCLE = 0;
+    public static final int BOX = 1;
+    public static final int CAPSULE = 2;
+    public static final int ARROW = 3;
+
+    // Instance (32 bytes)
+    // =======
+    // Center        Size          Axis (cos, sin)   Color (rgb, fill)  Shape
+    // float, float, float, float, float, float,     ubyte x 4,         ubyte x 4
+    private static final int CENTER_OFFSET = 0;
+    private static final int SIZE_OFFSET = CENTER_OFFSET + 2 * Float.BYTES;
+    private static final int AXIS_OFFSET = SIZE_OFFSET + 2 * Float.BYTES;
+    private static final int COLOR_OFFSET = AXIS_OFFSET + 2 * Float.BYTES;
+    private static final int SHAPE_OFFSET = COLOR_OFFSET + 4;
+    private static final int SHAPE_SIZE_BYTES = SHAPE_OFFSET + 4;
+
+    public static final int MAX_SHAPES = 5000;
+    private static final int INITIAL_SHAPES = 64;
+
+    private ByteBuffer vertices = MemoryUtil.memAlloc(INITIAL_SHAPES * SHAPE_SIZE_BYTES);
+    private int[] lifeTimes = new int[INITIAL_SHAPES];
+    private int numShapes = 0;
+    private final VertexStream vertexStream = new VertexStream((long) MAX_SHAPES * SHAPE_SIZE_BYTES);
+    private long boundRegionOffset = -1;
+    private Shader shader = AssetPool.getShader("assets/shaders/debugShape2D.glsl");
+
+    private int vaoID;
+
+    private boolean started = false;
+
+    private final int zIndex;
+    private final Vector2f resolution = new Vector2f();
+
+    public DrawShapes(int zIndex) {
+        this.zIndex = zIndex;
+    }
+
+    /**
+     * Starts the drawing process.
+     *
+     * This method generates the Vertex Array Object (VAO), binds it, starts the vertex stream of the shapes
+     * and enables the instanced vertex array attributes.
+     */
+    public void start() {
+        //Generate the vao
+        vaoID = glGenVertexArrays();
+        GLState.bindVertexArray(vaoID);
+
+        // Create the stream of the shapes
+        vertexStream.start();
+
+        //Enable the vertex array attributes, one value per shape
+        for (int location = 0; location < 5; location++) {
+            glEnableVertexAttribArray(location);
+            glVertexAttribDivisor(location, 1);
+        }
+        bindShapeAttributes(vertexStream.getRegionOffset());
+        started = true;
+    }
+
+    /**
+     * Points the attributes to a region of the vertex stream.
+     *
+     * @param regionOffset The offset in bytes of the region.
+     */
+    private void bindShapeAttributes(long regionOffset) {
+        glBindBuffer(GL_ARRAY_BUFFER, vertexStream.getVboID());
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, SHAPE_SIZE_BYTES, regionOffset + CENTER_OFFSET);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, SHAPE_SIZE_BYTES, regionOffset + SIZE_OFFSET);
+        glVertexAttribPointer(2, 2, GL_FLOAT, false, SHAPE_SIZE_BYTES, regionOffset + AXIS_OFFSET);
+        glVertexAttribPointer(3, 4, GL_UNSIGNED_BYTE, true, SHAPE_SIZE_BYTES, regionOffset + COLOR_OFFSET);
+        glVertexAttribIPointer(4, 1, GL_UNSIGNED_BYTE, SHAPE_SIZE_BYTES, regionOffset + SHAPE_OFFSET);
+        boundRegionOffset = regionOffset;
+    }
+
+    /**
+     * Begins a frame for drawing.
+     *
+     * This method decrements the lifetime of every shape and removes the shapes that expired in a single pass,
+     * moving the shapes that are left to the front of the buffer.
+     */
+    public void beginFrame() {
+        long address = MemoryUtil.memAddress(vertices);
+        int kept = 0;
+        for (int i = 0; i < numShapes; i++) {
+            if (--lifeTimes[i] <= 0) continue;
+            if (kept != i) {
+                MemoryUtil.memCopy(address + (long) i * SHAPE_SIZE_BYTES,
+                        address + (long) kept * SHAPE_SIZE_BYTES, SHAPE_SIZE_BYTES);
+                lifeTimes[kept] = lifeTimes[i];
+            }
+            kept++;
+        }
+        numShapes = kept;
+    }
+
+    /**
+     * Draws the shapes.
+     *
+     * This method checks if there are any shapes to draw, and if so, streams the used part of the buffer,
+     * uses the shader and draws every shape as an instanced quad.
+     */
+    public void draw() {
+        if (numShapes <= 0) return;
+        if (!started) {
+            start();
+        }
+        vertexStream.stream(vertices, numShapes * SHAPE_SIZE_BYTES);
+
+        //Use our shader
+        shader.use();
+        shader.uploadFloat("uOutlineWidth", Settings.THICK_DEBUG_LINES ? Settings.DEBUG_LINE_WIDTH : 1.0f);
+        Framebuffer framebuffer = Window.getFramebuffer();
+        resolution.set(framebuffer.getWidth(), framebuffer.getHeight());
+        shader.uploadVec2f("uResolution", resolution);
+
+        //Bind the vao
+        GLState.bindVertexArray(vaoID);
+        long regionOffset = vertexStream.getRegionOffset();
+        if (regionOffset != boundRegionOffset) {
+            bindShapeAttributes(regionOffset);
+        }
+
+        //Draw the shapes
+        glDrawArraysInstanced(GL_TRIANGLE_STRIP, 0, 4, numShapes);
+        vertexStream.fence();
+        RenderStats.addDrawCall(0);
+
+        //Unbind shader
+        shader.detach();
+    }
+
+    /**
+     * Adds a shape to be drawn. Shapes beyond {@link #MAX_SHAPES} are dropped.
+     *
+     * @param shape The kind of the shape, {@link #CIRCLE}, {@link #BOX}, {@link #CAPSULE} or {@link #ARROW}.
+     * @param centerX The horizontal position of the center of the shape.
+     * @param centerY The vertical position of the center of the shape.
+     * @param sizeX The first size of the shape, its meaning depends on the kind of the shape.
+     * @param sizeY The second size of the shape, its meaning depends on the kind of the shape.
+     * @param cos The cosine of the rotation of the shape.
+     * @param sin The sine of the rotation of the shape.
+     * @param argb The color of the shape as 0xAARRGGBB, where the alpha is the opacity of the fill.
+     * @param lifeTime The number of frames the shape is drawn for.
+     */
+    private void shape(int shape, float centerX, float centerY, float sizeX, float sizeY, float cos, float sin,
+                       int argb, int lifeTime) {
+        if (numShapes >= MAX_SHAPES) return;
+        if (numShapes == lifeTimes.length) {
+            int capacity = Math.min(MAX_SHAPES, lifeTimes.length * 2);
+            vertices = MemoryUtil.memRealloc(vertices, capacity * SHAPE_SIZE_BYTES);
+            lifeTimes = Arrays.copyOf(lifeTimes, capacity);
+        }
+
+        int offset = numShapes * SHAPE_SIZE_BYTES;
+        vertices.putFloat(offset + CENTER_OFFSET, centerX);
+        vertices.putFloat(offset + CENTER_OFFSET + Float.BYTES, centerY);
+        vertices.putFloat(offset + SIZE_OFFSET, sizeX);
+        vertices.putFloat(offset + SIZE_OFFSET + Float.BYTES, sizeY);
+        vertices.putFloat(offset + AXIS_OFFSET, cos);
+        vertices.putFloat(offset + AXIS_OFFSET + Float.BYTES, sin);
+        vertices.put(offset + COLOR_OFFSET, (byte) (argb >> 16));
+        vertices.put(offset + COLOR_OFFSET + 1, (byte) (argb >> 8));
+        vertices.put(offset + COLOR_OFFSET + 2, (byte) argb);
+        vertices.put(offset + COLOR_OFFSET + 3, (byte) (argb >>> 24));
+        vertices.put(offset + SHAPE_OFFSET, (byte) shape);
+        lifeTimes[numShapes] = lifeTime;
+        numShapes++;
+    }
+
+    /**
+     * Adds a circle to be drawn at a specified center with a specified radius, color, and lifetime.
+     *
+     * @param centerX The horizontal position of the center of the circle.
+     * @param centerY The vertical position of the center of the circle.
+     * @param radius The radius of the circle.
+     * @param argb The color of the circle as 0xAARRGGBB, where the alpha is the opacity of the fill.
+     * @param lifeTime The number of frames the circle is drawn for.
+     */
+    public void circle(float centerX, float centerY, float radius, int argb, int lifeTime) {
+        shape(CIRCLE, centerX, centerY, radius, radius, 1.0f, 0.0f, argb, lifeTime);
+    }
+
+    /**
+     * Adds a box to be drawn at a specified center with specified dimensions, rotation, color, and lifetime.
+     *
+     * @param centerX The horizontal position of the center of the box.
+     * @param centerY The vertical position of the center of the box.
+     * @param width The width of the box.
+     * @param height The height of the box.
+     * @param rotation The rotation of the box in degrees.
+     * @param argb The color of the box as 0xAARRGGBB, where the alpha is the opacity of the fill.
+     * @param lifeTime The number of frames the box is drawn for.
+     */
+    public void box(float centerX, float centerY, float width, float height, float rotation, int argb, int lifeTime) {
+        float cos = 1.0f;
+        float sin = 0.0f;
+        if (rotation != 0.0f) {
+            double angle = Math.toRadians(rotation);
+            cos = (float) Math.cos(angle);
+            sin = (float) Math.sin(angle);
+        }
+        shape(BOX, centerX, centerY, Math.abs(width) * 0.5f, Math.abs(height) * 0.5f, cos, sin, argb, lifeTime);
+    }
+
+    /**
+     * Adds a capsule to be drawn around a segment, with a specified radius, color, and lifetime.
+     *
+     * @param x1 The horizontal position of the start of the segment.
+     * @param y1 The vertical position of the start of the segment.
+     * @param x2 The horizontal position of the end of the segment.
+     * @param y2 The vertical position of the end of the segment.
+     * @param radius The radius of the capsule around the segment.
+     * @param argb The color of the capsule as 0xAARRGGBB, where the alpha is the opacity of the fill.
+     * @param lifeTime The number of frames the capsule is drawn for.
+     */
+    public void capsule(float x1, float y1, float x2, float y2, float radius, int argb, int lifeTime) {
+        segmentShape(CAPSULE, x1, y1, x2, y2, radius, argb, lifeTime);
+    }
+
+    /**
+     * Adds an arrow to be drawn from one point to another, with a specified head size, color, and lifetime.
+     * The head of the arrow is always filled.
+     *
+     * @param x1 The horizontal position of the tail of the arrow.
+     * @param y1 The vertical position of the tail of the arrow.
+     * @param x2 The horizontal position of the tip of the arrow.
+     * @param y2 The vertical position of the tip of the arrow.
+     * @param headSize The length and the width of the head of the arrow.
+     * @param rgb The color of the arrow, as 0xRRGGBB.
+     * @param lifeTime The number of frames the arrow is drawn for.
+     */
+    public void arrow(float x1, float y1, float x2, float y2, float headSize, int rgb, int lifeTime) {
+        segmentShape(ARROW, x1, y1, x2, y2, headSize, rgb, lifeTime);
+    }
+
+    /**
+     * Adds a shape that is oriented along a segment, centered on the middle of the segment.
+     *
+     * @param shape The kind of the shape.
+     * @param x1 The horizontal position of the start of the segment.
+     * @param y1 The vertical position of the start of the segment.
+     * @param x2 The horizontal position of the end of the segment.
+     * @param y2 The vertical position of the end of the segment.
+     * @param width The width of the shape across the segment.
+     * @param argb The color of the shape, as 0xAARRGGBB.
+     * @param lifeTime The number of frames the shape is drawn for.
+     */
+    private void segmentShape(int shape, float x1, float y1, float x2, float y2, float width, int argb, int lifeTime) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        float cos = 1.0f;
+        float sin = 0.0f;
+        if (length > 0.0f) {
+            cos = dx / length;
+            sin = dy / length;
+        }
+        shape(shape, (x1 + x2) * 0.5f, (y1 + y2) * 0.5f, length * 0.5f, width, cos, sin, argb, lifeTime);
+    }
+
+    /**
+     * Returns the zIndex of the layer.
+     *
+     * @return The zIndex of the layer.
+     */
+    public int getzIndex() {
+        return zIndex;
+    }
+
+    /**
+     * Returns the number of shapes of the layer.
+     *
+     * @return The number of shapes.
+     */
+    public int getNumShapes() {
+        return numShapes;
+    }
+}
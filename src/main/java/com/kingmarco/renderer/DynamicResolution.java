@@ -0,0 +1,120 @@
+package com.kingmarco.renderer;
+
+import com.kingmarco.util.Settings;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjectui64;
+
+/**
+ * The DynamicResolution class chooses the scale the game framebuffer is rendered at.
+ *
+ * Without dynamic resolution the scale is {@link Settings#RENDER_SCALE}. With {@link Settings#DYNAMIC_RESOLUTION},
+ * the time the GPU spends rendering the scene is measured with timer queries, and the scale is lowered when
+ * the smoothed time exceeds {@link Settings#GPU_FRAME_BUDGET_MS}, and raised again when there is headroom,
+ * between {@link Settings#MIN_RENDER_SCALE} and 1. The queries are read a few frames later, once their result
+ * is available, so measuring never stalls the GPU. After every change the scale is kept for a while,
+ * so the frames rendered at the previous scale do not trigger another change.
+ */
+public class DynamicResolution {
+    private static final int QUERIES = 4;
+    private static final int COOLDOWN_FRAMES = 30;
+    private static final float SCALE_DOWN_STEP = 0.1f;
+    private static final float SCALE_UP_STEP = 0.05f;
+    // Fraction of the budget under which the scale is raised
+    private static final float HEADROOM = 0.7f;
+
+    private static final int[] queries = new int[QUERIES];
+    private static final boolean[] queryPending = new boolean[QUERIES];
+    private static boolean queriesCreated = false;
+    private static int currentQuery = -1;
+    private static int frame = 0;
+
+    private static float gpuMillis = -1.0f;
+    private static float dynamicScale = 1.0f;
+    private static int cooldown = 0;
+
+    /**
+     * Starts measuring the GPU time of a frame.
+     *
+     * This method reads the result of the query that is about to be reused, adapts the scale to it,
+     * and begins the query of this frame. It does nothing without dynamic resolution.
+     */
+    public static void beginFrame() {
+        currentQuery = -1;
+        if (!Settings.DYNAMIC_RESOLUTION) {
+            gpuMillis = -1.0f;
+            return;
+        }
+        if (!queriesCreated) {
+            glGenQueries(queries);
+            queriesCreated = true;
+        }
+
+        int slot = frame % QUERIES;
+        if (queryPending[slot]) {
+            // The query is still in flight, this frame is not measured
+            if (glGetQueryObjecti(queries[slot], GL_QUERY_RESULT_AVAILABLE) == GL_FALSE) return;
+            queryPending[slot] = false;
+            adapt(glGetQueryObjectui64(queries[slot], GL_QUERY_RESULT) / 1_000_000.0f);
+        }
+
+        glBeginQuery(GL_TIME_ELAPSED, queries[slot]);
+        currentQuery = slot;
+    }
+
+    /**
+     * Stops measuring the GPU time of the frame started by {@link #beginFrame()}.
+     */
+    public static void endFrame() {
+        if (currentQuery >= 0) {
+            glEndQuery(GL_TIME_ELAPSED);
+            queryPending[currentQuery] = true;
+            currentQuery = -1;
+        }
+        frame++;
+    }
+
+    /**
+     * Smooths a measured GPU time and changes the scale when it is over or well under the budget.
+     *
+     * @param millis The GPU time of a frame in milliseconds.
+     */
+    private static void adapt(float millis) {
+        gpuMillis = gpuMillis < 0.0f ? millis : gpuMillis * 0.9f + millis * 0.1f;
+        if (cooldown > 0) {
+            cooldown--;
+            return;
+        }
+
+        float minScale = Math.min(1.0f, Math.max(0.1f, Settings.MIN_RENDER_SCALE));
+        if (gpuMillis > Settings.GPU_FRAME_BUDGET_MS && dynamicScale > minScale) {
+            dynamicScale = Math.max(minScale, dynamicScale - SCALE_DOWN_STEP);
+            cooldown = COOLDOWN_FRAMES;
+        } else if (gpuMillis < Settings.GPU_FRAME_BUDGET_MS * HEADROOM && dynamicScale < 1.0f) {
+            dynamicScale = Math.min(1.0f, dynamicScale + SCALE_UP_STEP);
+            cooldown = COOLDOWN_FRAMES;
+        }
+    }
+
+    /**
+     * Returns the scale the framebuffer is rendered at, relative to the size of the game viewport.
+     *
+     * @return The render scale.
+     */
+    public static float getScale() {
+        if (Settings.DYNAMIC_RESOLUTION) {
+            return dynamicScale;
+        }
+        return Math.min(1.0f, Math.max(0.1f, Settings.RENDER_SCALE));
+    }
+
+    /**
+     * Returns the smoothed GPU time of the frames.
+     *
+     * @return The GPU time in milliseconds, or a negative value if it is not measured.
+     */
+    public static float getGpuMillis() {
+        return gpuMillis;
+    }
+}
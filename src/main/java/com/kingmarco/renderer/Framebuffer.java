@@ -1,21 +1,36 @@
 package com.kingmarco.renderer;
 
+import org.joml.Vector4f;
+
+import static org.lwjgl.opengl.GL20.glDrawBuffers;
 import static org.lwjgl.opengl.GL30.*;
 
 /**
  * The Framebuffer class handles the creation and management of a framebuffer.
  *
  * This class provides methods to bind and unbind the framebuffer, and get the framebuffer ID, texture ID, texture width, and texture height.
+ * Besides the color texture, the framebuffer has an integer attachment that the sprite shaders fill with the entity id
+ * of every pixel in the same draw, so the editor can pick entities without rendering the scene a second time.
+ * The framebuffer can be resized, so it follows the size of the game viewport scaled by the render scale.
  */
 public class Framebuffer {
+    // Attachments written by the shaders and the values they are cleared to, kept around so binding
+    // and clearing the framebuffer every frame does not allocate
+    private static final int[] DRAW_BUFFERS = {GL_COLOR_ATTACHMENT0, GL_COLOR_ATTACHMENT1};
+    private static final int[] CLEAR_ENTITY_IDS = {0, 0, 0, 0};
+    private static final float[] CLEAR_DEPTH = {1.0f};
+    private final float[] clearColor = new float[4];
     private int fboID;
     private Texture texture = null;
+    private int entityTextureId;
+    private int rboID;
+    private int width, height;
 
     /**
      * Constructs a Framebuffer with a specified width and height.
      *
-     * This method generates a framebuffer, binds it, creates a texture and attaches it to the framebuffer,
-     * creates a renderbuffer and attaches it to the framebuffer, checks if the framebuffer is complete, and unbinds the framebuffer.
+     * This method generates a framebuffer, binds it, creates its attachments, checks if the framebuffer is complete,
+     * and unbinds the framebuffer.
      *
      * @param width The width of the framebuffer.
      * @param height The height of the framebuffer.
@@ -24,14 +39,46 @@ public class Framebuffer {
         // Generate framebuffer
         fboID = glGenFramebuffers();
         glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+        createAttachments(width, height);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
 
-        //Create the texture to render the data to, and attach it to out framebuffer
+    /**
+     * Creates the attachments of the bound framebuffer.
+     *
+     * This method creates a texture and attaches it to the framebuffer, creates an integer texture for the entity ids
+     * and attaches it as the second color attachment, creates a renderbuffer for the depth and attaches it,
+     * and checks if the framebuffer is complete.
+     *
+     * @param width The width of the attachments.
+     * @param height The height of the attachments.
+     */
+    private void createAttachments(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        //Create the texture to render the data to, and attach it to out framebuffer.
+        //The render scale can make it smaller than the viewport, nearest filtering keeps the pixel art crisp
         this.texture = new Texture(width, height);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
         glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D,
                 this.texture.getTexID(), 0);
 
+        // One unsigned integer per pixel, so the entity ids are stored exactly
+        entityTextureId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, entityTextureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_R32UI, width, height, 0,
+                GL_RED_INTEGER, GL_UNSIGNED_INT, 0);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT1, GL_TEXTURE_2D,
+                entityTextureId, 0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glDrawBuffers(DRAW_BUFFERS);
+
         // Create renderbuffer store the depth info
-        int rboID = glGenRenderbuffers();
+        rboID = glGenRenderbuffers();
         glBindRenderbuffer(GL_RENDERBUFFER, rboID);
         glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT32, width, height);
         glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, rboID);
@@ -39,16 +86,65 @@ public class Framebuffer {
         if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE){
             assert false : "Error: Framebuffer is not complete";
         }
+    }
+
+    /**
+     * Resizes the framebuffer.
+     *
+     * This method deletes the attachments and creates them again with the new size, the framebuffer itself is kept.
+     * The contents of the attachments are lost, and the IDs of the textures change.
+     *
+     * @param width The new width of the framebuffer.
+     * @param height The new height of the framebuffer.
+     */
+    public void resize(int width, int height) {
+        if (width == this.width && height == this.height) return;
+
+        glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+        glDeleteTextures(texture.getTexID());
+        glDeleteTextures(entityTextureId);
+        glDeleteRenderbuffers(rboID);
+        createAttachments(width, height);
         glBindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
     /**
      * Binds the framebuffer.
      *
-     * This method binds the framebuffer for rendering.
+     * This method binds the framebuffer for rendering, and sets the viewport to its size.
      */
     public void bind() {
         glBindFramebuffer(GL_FRAMEBUFFER, fboID);
+        glViewport(0, 0, width, height);
+        glDrawBuffers(DRAW_BUFFERS);
+    }
+
+    /**
+     * Stops writing the entity ids.
+     *
+     * Shaders that only write a color, like the debug lines, have to be drawn after this method, otherwise
+     * the values they leave in the entity attachment are undefined. {@link #bind()} writes both attachments again.
+     */
+    public void drawColorOnly() {
+        glDrawBuffers(GL_COLOR_ATTACHMENT0);
+    }
+
+    /**
+     * Clears the color texture to a color, the entity ids to 0, which means no entity, and the depth to the far plane.
+     *
+     * An integer color buffer can not be cleared with the float clear color, so every attachment is cleared
+     * on its own. The framebuffer has to be bound.
+     *
+     * @param color The clear color.
+     */
+    public void clear(Vector4f color) {
+        clearColor[0] = color.x;
+        clearColor[1] = color.y;
+        clearColor[2] = color.z;
+        clearColor[3] = color.w;
+        glClearBufferfv(GL_COLOR, 0, clearColor);
+        glClearBufferuiv(GL_COLOR, 1, CLEAR_ENTITY_IDS);
+        glClearBufferfv(GL_DEPTH, 0, CLEAR_DEPTH);
     }
 
     /**
@@ -78,6 +174,33 @@ public class Framebuffer {
         return texture.getTexID();
     }
 
+    /**
+     * Returns the ID of the integer texture that holds the entity ids.
+     *
+     * @return The ID of the entity texture.
+     */
+    public int getEntityTextureId() {
+        return entityTextureId;
+    }
+
+    /**
+     * Returns the width of the framebuffer.
+     *
+     * @return The width of the framebuffer.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the framebuffer.
+     *
+     * @return The height of the framebuffer.
+     */
+    public int getHeight() {
+        return height;
+    }
+
     /**
      * Returns the width of the texture attached to the framebuffer.
      *
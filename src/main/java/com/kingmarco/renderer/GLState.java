@@ -0,0 +1,112 @@
+package com.kingmarco.renderer;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+
+/**
+ * The GLState class remembers the program, vertex array and textures that are bound in OpenGL.
+ *
+ * The renderer binds through this class, which skips the calls that would bind what is already bound,
+ * so consecutive batches that share a shader, a VAO or textures only pay for what actually changes.
+ * Every call made and skipped is counted in {@link RenderStats}.
+ *
+ * Code that binds textures directly, like the texture uploads or the editor UI, makes the cache stale,
+ * so {@link #invalidate()} has to be called before the cached state is trusted again.
+ */
+public class GLState {
+    private static final int UNKNOWN = -1;
+
+    private static int program = UNKNOWN;
+    private static int vertexArray = UNKNOWN;
+    private static int activeUnit = UNKNOWN;
+    private static int[] textureTargets = new int[32];
+    private static int[] textures = new int[32];
+
+    static {
+        invalidate();
+    }
+
+    /**
+     * Forgets the cached state, so the next bind of every kind is always made.
+     */
+    public static void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        activeUnit = UNKNOWN;
+        Arrays.fill(textureTargets, UNKNOWN);
+        Arrays.fill(textures, UNKNOWN);
+    }
+
+    /**
+     * Uses a shader program, unless it is already in use.
+     *
+     * @param programID The ID of the program, or 0 to use none.
+     */
+    public static void useProgram(int programID) {
+        if (program == programID) {
+            RenderStats.addSkippedGlCall();
+            return;
+        }
+        program = programID;
+        glUseProgram(programID);
+        RenderStats.addGlCall();
+    }
+
+    /**
+     * Binds a vertex array object, unless it is already bound.
+     *
+     * @param vaoID The ID of the VAO, or 0 to bind none.
+     */
+    public static void bindVertexArray(int vaoID) {
+        if (vertexArray == vaoID) {
+            RenderStats.addSkippedGlCall();
+            return;
+        }
+        vertexArray = vaoID;
+        glBindVertexArray(vaoID);
+        RenderStats.addGlCall();
+    }
+
+    /**
+     * Binds a texture to a texture unit, unless it is already bound there.
+     *
+     * @param unit The texture unit.
+     * @param target The texture target, like GL_TEXTURE_2D_ARRAY.
+     * @param textureID The ID of the texture, or 0 to unbind the target.
+     */
+    public static void bindTexture(int unit, int target, int textureID) {
+        if (unit >= textures.length) {
+            int oldLength = textures.length;
+            textures = Arrays.copyOf(textures, unit + 1);
+            textureTargets = Arrays.copyOf(textureTargets, unit + 1);
+            Arrays.fill(textures, oldLength, textures.length, UNKNOWN);
+            Arrays.fill(textureTargets, oldLength, textureTargets.length, UNKNOWN);
+        }
+        if (textureTargets[unit] == target && textures[unit] == textureID) {
+            RenderStats.addSkippedGlCall();
+            return;
+        }
+        activeTexture(unit);
+        textureTargets[unit] = target;
+        textures[unit] = textureID;
+        glBindTexture(target, textureID);
+        RenderStats.addGlCall();
+    }
+
+    /**
+     * Selects the active texture unit, unless it is already active.
+     *
+     * @param unit The texture unit.
+     */
+    public static void activeTexture(int unit) {
+        if (activeUnit == unit) return;
+        activeUnit = unit;
+        glActiveTexture(GL_TEXTURE0 + unit);
+        RenderStats.addGlCall();
+    }
+}
@@ -0,0 +1,231 @@
+package com.kingmarco.renderer;
+
+import com.kingmarco.components.SpriteRenderer;
+import com.kingmarco.components.Transform;
+import org.joml.Vector2f;
+import org.joml.Vector4f;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL30.glVertexAttribIPointer;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+/**
+ * A render batch that uploads one instance per sprite instead of four vertices.
+ *
+ * The corners of the quad come from a small static buffer shared by every instance, and the vertex shader
+ * scales, rotates and moves them with the transform stored in the instance, so the transform math runs on the GPU.
+ * The batch keeps the sprite slots and the texture arrays of {@link RenderBatch}, and only changes the vertex data
+ * and the draw call.
+ */
+public class InstancedRenderBatch extends RenderBatch {
+    // Instance (52 bytes)
+    // ========
+    // Pos                  Scale         Offset        Rotation  UV rect           Color                   tex id  tex layer  entity id
+    //float, float, float   float, float  float, float  float     ushort x4 (norm)  ubyte x4 (normalized)   ushort  ushort     uint
+    // The third component of the position is the zIndex of the sprite, which the shader writes as the depth
+
+    private static final int POS_SIZE = 3;
+    private static final int SCALE_SIZE = 2;
+    private static final int OFFSET_SIZE = 2;
+    private static final int ROTATION_SIZE = 1;
+    private static final int UV_RECT_SIZE = 4;
+    private static final int COLOR_SIZE = 4;
+
+    private static final int POS_OFFSET = 0;
+    private static final int SCALE_OFFSET = POS_OFFSET + POS_SIZE * Float.BYTES;
+    private static final int OFFSET_OFFSET = SCALE_OFFSET + SCALE_SIZE * Float.BYTES;
+    private static final int ROTATION_OFFSET = OFFSET_OFFSET + OFFSET_SIZE * Float.BYTES;
+    private static final int UV_RECT_OFFSET = ROTATION_OFFSET + ROTATION_SIZE * Float.BYTES;
+    private static final int COLOR_OFFSET = UV_RECT_OFFSET + UV_RECT_SIZE * Short.BYTES;
+    private static final int TEX_ID_OFFSET = COLOR_OFFSET + COLOR_SIZE;
+    private static final int TEX_LAYER_OFFSET = TEX_ID_OFFSET + Short.BYTES;
+    private static final int ENTITY_ID_OFFSET = TEX_LAYER_OFFSET + Short.BYTES;
+    private static final int INSTANCE_SIZE_BYTES = 52;
+
+    // Corners of the quad, in the same order as the texture coordinates of a sprite
+    private static final float[] CORNERS = {1, 1, 1, 0, 0, 0, 0, 1};
+
+    private int cornerVboID;
+    private long boundRegionOffset = -1;
+
+    public InstancedRenderBatch(int maxBatchSize, int zIndex, long chunk, boolean isStatic, boolean isOpaque,
+                                Renderer renderer) {
+        super(maxBatchSize, zIndex, chunk, isStatic, isOpaque, renderer, INSTANCE_SIZE_BYTES);
+    }
+
+    /**
+     * Initializes the rendering process.
+     *
+     * This method generates and binds a VAO, uploads the corners and the indices of a single quad,
+     * starts the vertex stream that holds the instances and sets up the instanced attribute pointers.
+     */
+    @Override
+    public void start() {
+        vaoID = glGenVertexArrays();
+        GLState.bindVertexArray(vaoID);
+
+        cornerVboID = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, cornerVboID);
+        glBufferData(GL_ARRAY_BUFFER, CORNERS, GL_STATIC_DRAW);
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, 2 * Float.BYTES, 0);
+        glEnableVertexAttribArray(0);
+
+        eboID = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, new int[]{3, 2, 0, 0, 2, 1}, GL_STATIC_DRAW);
+
+        vertexStream.start();
+        int[] locations = {1, 3, 4, 5, 6, 7, 8, 9, 10};
+        for (int location : locations) {
+            glEnableVertexAttribArray(location);
+            glVertexAttribDivisor(location, 1);
+        }
+        bindInstanceAttributes(vertexStream.getRegionOffset());
+    }
+
+    /**
+     * Points the instanced attributes to a region of the vertex stream.
+     *
+     * The VAO has to be bound. Without base instances in GL 3.3 the region is selected through the offset
+     * of the attribute pointers.
+     *
+     * @param regionOffset The byte offset of the region.
+     */
+    private void bindInstanceAttributes(long regionOffset) {
+        glBindBuffer(GL_ARRAY_BUFFER, vertexStream.getVboID());
+        glVertexAttribPointer(1, COLOR_SIZE, GL_UNSIGNED_BYTE, true, INSTANCE_SIZE_BYTES, regionOffset + COLOR_OFFSET);
+        glVertexAttribIPointer(3, 1, GL_UNSIGNED_SHORT, INSTANCE_SIZE_BYTES, regionOffset + TEX_ID_OFFSET);
+        glVertexAttribIPointer(4, 1, GL_UNSIGNED_INT, INSTANCE_SIZE_BYTES, regionOffset + ENTITY_ID_OFFSET);
+        glVertexAttribIPointer(5, 1, GL_UNSIGNED_SHORT, INSTANCE_SIZE_BYTES, regionOffset + TEX_LAYER_OFFSET);
+        glVertexAttribPointer(6, POS_SIZE, GL_FLOAT, false, INSTANCE_SIZE_BYTES, regionOffset + POS_OFFSET);
+        glVertexAttribPointer(7, SCALE_SIZE, GL_FLOAT, false, INSTANCE_SIZE_BYTES, regionOffset + SCALE_OFFSET);
+        glVertexAttribPointer(8, OFFSET_SIZE, GL_FLOAT, false, INSTANCE_SIZE_BYTES, regionOffset + OFFSET_OFFSET);
+        glVertexAttribPointer(9, ROTATION_SIZE, GL_FLOAT, false, INSTANCE_SIZE_BYTES, regionOffset + ROTATION_OFFSET);
+        glVertexAttribPointer(10, UV_RECT_SIZE, GL_UNSIGNED_SHORT, true, INSTANCE_SIZE_BYTES, regionOffset + UV_RECT_OFFSET);
+        boundRegionOffset = regionOffset;
+    }
+
+    /**
+     * Draws every sprite of the batch with a single instanced draw call.
+     */
+    @Override
+    protected void draw() {
+        GLState.bindVertexArray(vaoID);
+        long regionOffset = vertexStream.getRegionOffset();
+        if (regionOffset != boundRegionOffset) {
+            bindInstanceAttributes(regionOffset);
+        }
+
+        glDrawElementsInstanced(GL_TRIANGLES, 6, GL_UNSIGNED_INT, 0, numSprites);
+        vertexStream.fence();
+    }
+
+    /**
+     * Loads the instance of the sprite at the given index.
+     *
+     * This method stores the position, zIndex, scale and rotation of the game object, the rectangle of the texture
+     * coordinates, the color, the texture slot and layer and the entity id, and marks the bytes of the instance
+     * as dirty. It also stores the bounds of the rotated quad for culling. When the texture was packed into the atlas,
+     * the quad is shrunk to the trimmed part of the texture through the scale and the offset, and the texture
+     * coordinates are mapped into the atlas page.
+     *
+     * @param index The index of the sprite whose instance is loaded.
+     */
+    @Override
+    protected void loadVertexProperties(int index) {
+        SpriteRenderer sprite = this.sprites[index];
+        Transform transform = sprite.gameObject.transform;
+        Vector4f color = sprite.getColor();
+        Vector2f[] texCoords = sprite.getTexCoords();
+
+        int texId = getTextureSlot(sprite);
+        int texLayer = 0;
+        AtlasRegion region = null;
+        if (texId > 0) {
+            texLayer = getRenderTexture(sprite.getTexture()).getArrayLayer();
+            region = sprite.getTexture().getAtlasRegion();
+        }
+
+        // Left, bottom, right and top texture coordinates of the quad
+        float u0 = texCoords[2].x, v0 = texCoords[2].y;
+        float u1 = texCoords[0].x, v1 = texCoords[0].y;
+        float width = 1, height = 1, centerX = 0, centerY = 0;
+        if (region != null) {
+            float uSpan = u1 - u0;
+            float vSpan = v1 - v0;
+            float left = -0.5f, right = 0.5f, bottom = -0.5f, top = 0.5f;
+            float cu0 = region.clampU(u0), cu1 = region.clampU(u1);
+            float cv0 = region.clampV(v0), cv1 = region.clampV(v1);
+            if (uSpan != 0) {
+                left += (cu0 - u0) / uSpan;
+                right += (cu1 - u1) / uSpan;
+            }
+            if (vSpan != 0) {
+                bottom += (cv0 - v0) / vSpan;
+                top += (cv1 - v1) / vSpan;
+            }
+            width = right - left;
+            height = top - bottom;
+            centerX = (left + right) * 0.5f;
+            centerY = (bottom + top) * 0.5f;
+
+            u0 = region.mapU(cu0);
+            u1 = region.mapU(cu1);
+            v0 = region.mapV(cv0);
+            v1 = region.mapV(cv1);
+        }
+
+        // Bounds of the rotated quad, from its four corners
+        float halfWidth = transform.scale.x * width * 0.5f;
+        float halfHeight = transform.scale.y * height * 0.5f;
+        float offsetX = transform.scale.x * centerX;
+        float offsetY = transform.scale.y * centerY;
+        float sin = (float) Math.sin(Math.toRadians(transform.rotation));
+        float cos = (float) Math.cos(Math.toRadians(transform.rotation));
+        float quadMinX = Float.POSITIVE_INFINITY, quadMinY = Float.POSITIVE_INFINITY;
+        float quadMaxX = Float.NEGATIVE_INFINITY, quadMaxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < 4; i++) {
+            float localX = offsetX + (i < 2 ? halfWidth : -halfWidth);
+            float localY = offsetY + (i == 0 || i == 3 ? halfHeight : -halfHeight);
+            float x = transform.position.x + localX * cos - localY * sin;
+            float y = transform.position.y + localX * sin + localY * cos;
+            quadMinX = Math.min(quadMinX, x);
+            quadMinY = Math.min(quadMinY, y);
+            quadMaxX = Math.max(quadMaxX, x);
+            quadMaxY = Math.max(quadMaxY, y);
+        }
+        setSpriteBounds(index, quadMinX, quadMinY, quadMaxX, quadMaxY);
+
+        int offset = index * INSTANCE_SIZE_BYTES;
+        vertices.putFloat(offset + POS_OFFSET, transform.position.x);
+        vertices.putFloat(offset + POS_OFFSET + Float.BYTES, transform.position.y);
+        vertices.putFloat(offset + POS_OFFSET + 2 * Float.BYTES, transform.getZIndex());
+        vertices.putFloat(offset + SCALE_OFFSET, transform.scale.x * width);
+        vertices.putFloat(offset + SCALE_OFFSET + Float.BYTES, transform.scale.y * height);
+        vertices.putFloat(offset + OFFSET_OFFSET, transform.scale.x * centerX);
+        vertices.putFloat(offset + OFFSET_OFFSET + Float.BYTES, transform.scale.y * centerY);
+        vertices.putFloat(offset + ROTATION_OFFSET, transform.rotation);
+        vertices.putShort(offset + UV_RECT_OFFSET, toUnorm16(u0));
+        vertices.putShort(offset + UV_RECT_OFFSET + 2, toUnorm16(v0));
+        vertices.putShort(offset + UV_RECT_OFFSET + 4, toUnorm16(u1));
+        vertices.putShort(offset + UV_RECT_OFFSET + 6, toUnorm16(v1));
+        putColor(vertices, offset + COLOR_OFFSET, color);
+        vertices.putShort(offset + TEX_ID_OFFSET, (short) texId);
+        vertices.putShort(offset + TEX_LAYER_OFFSET, (short) texLayer);
+        vertices.putInt(offset + ENTITY_ID_OFFSET, sprite.gameObject.getUid() + 1);
+
+        vertexStream.markDirty(index * INSTANCE_SIZE_BYTES, INSTANCE_SIZE_BYTES);
+    }
+
+    /**
+     * Destroys the batch and the buffer of the quad corners.
+     */
+    @Override
+    public void destroy() {
+        super.destroy();
+        glDeleteBuffers(cornerVboID);
+    }
+}
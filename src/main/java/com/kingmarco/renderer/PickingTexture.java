@@ -2,136 +2,190 @@ package com.kingmarco.renderer;
 
 import org.joml.Vector2i;
 
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_PACK_BUFFER;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
 
 /**
- * The PickingTexture class handles the creation and management of a picking texture.
+ * The PickingTexture class reads the entity ids that the sprite shaders write into the {@link Framebuffer}.
  *
- * This class provides methods to initialize the picking texture, enable and disable writing to the framebuffer,
- * read a pixel from the picking texture, and read a range of pixels from the picking texture.
+ * This class provides methods to request the ids of the entities at a pixel or in a range of pixels.
+ * The ids are written in the same draw as the colors, so there is no separate picking pass, and the requests
+ * are answered asynchronously, through pixel buffer objects and fences, so reading the ids never stalls the GPU.
+ * The pixels are requested in screen coordinates, which have the size the framebuffer had when the picking texture
+ * was created, and are scaled to the current size of the framebuffer when they are read, so picking keeps working
+ * when the framebuffer is resized.
  */
 public class PickingTexture {
-    private int pickingTextureId;
-    private int fbo;
-    private int depthTexture;
-
-    public PickingTexture(int width, int height) {
-        if (!init(width, height)) {
-            assert false : "Error initializing picking texture";
-        }
-    }
+    private final Framebuffer framebuffer;
+    private final int width, height;
+    private final List<PickRequest> pendingRequests = new ArrayList<>();
+    private final List<PickRequest> requestsInFlight = new ArrayList<>();
+    private final List<Integer> freePbos = new ArrayList<>();
 
     /**
-     * Initializes the picking texture with a specified width and height.
-     *
-     * This method generates a framebuffer, binds it, creates a texture and attaches it to the framebuffer,
-     * creates a renderbuffer and attaches it to the framebuffer, checks if the framebuffer is complete,
-     * and unbinds the texture and framebuffer.
+     * Constructs a PickingTexture that reads the entity ids of a framebuffer.
      *
-     * @param width The width of the picking texture.
-     * @param height The height of the picking texture.
-     * @return True if the initialization was successful, false otherwise.
+     * @param framebuffer The framebuffer whose second color attachment holds the entity ids.
      */
-    public boolean init(int width, int height){
-        // Generate framebuffer
-        fbo = glGenFramebuffers();
-        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
-
-        //Create the texture to render the data to, and attach it to out framebuffer
-        pickingTextureId = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, pickingTextureId);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB32F, width, height, 0,
-                GL_RGB, GL_FLOAT, 0);
-        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D,
-                this.pickingTextureId, 0);
-
-        // Create the texture object for the depth buffer
-        glEnable(GL_TEXTURE_2D);
-        depthTexture = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, depthTexture);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT, width, height, 0,
-                GL_DEPTH_COMPONENT, GL_FLOAT, 0);
-        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT,
-                GL_TEXTURE_2D, depthTexture, 0);
-
-        // Disable the reading
-        glReadBuffer(GL_NONE);
-        glDrawBuffer(GL_COLOR_ATTACHMENT0);
-
-        if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE){
-            assert false : "Error: Framebuffer is not complete";
-        }
-
-        // Unbind the texture and framebuffer
-        glBindTexture(GL_TEXTURE_2D, 0);
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
-        return true;
+    public PickingTexture(Framebuffer framebuffer) {
+        this.framebuffer = framebuffer;
+        this.width = framebuffer.getWidth();
+        this.height = framebuffer.getHeight();
     }
 
     /**
-     * Enables writing to the framebuffer.
+     * Scales the range of a request from screen coordinates to the pixels of the framebuffer.
+     * A range that is not empty covers at least one pixel.
      *
-     * This method binds the framebuffer for drawing.
+     * @param request The request to scale.
      */
-    public void enableWriting() {
-        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, fbo);
+    private void scaleToFramebuffer(PickRequest request) {
+        int framebufferWidth = framebuffer.getWidth();
+        int framebufferHeight = framebuffer.getHeight();
+        if (framebufferWidth == width && framebufferHeight == height) return;
+        if (request.width <= 0 || request.height <= 0) return;
+
+        int x0 = Math.min(framebufferWidth - 1, (int) ((long) request.x * framebufferWidth / width));
+        int y0 = Math.min(framebufferHeight - 1, (int) ((long) request.y * framebufferHeight / height));
+        int x1 = (int) (((long) (request.x + request.width) * framebufferWidth + width - 1) / width);
+        int y1 = (int) (((long) (request.y + request.height) * framebufferHeight + height - 1) / height);
+        request.x = x0;
+        request.y = y0;
+        request.width = Math.max(1, Math.min(framebufferWidth, x1) - x0);
+        request.height = Math.max(1, Math.min(framebufferHeight, y1) - y0);
     }
 
     /**
-     * Disables writing to the framebuffer.
+     * Requests the id of the entity at a pixel of the picking texture.
+     * A pixel outside the picking texture, like the top row of the viewport, has no entity.
      *
-     * This method unbinds the framebuffer after drawing.
+     * @param x The x-coordinate of the pixel, in screen coordinates.
+     * @param y The y-coordinate of the pixel, in screen coordinates.
+     * @param callback The callback that receives the id of the entity, or -1 if there is none.
      */
-    public void disableWriting() {
-        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, 0);
+    public void requestPixel(int x, int y, IntConsumer callback) {
+        requestPixels(new Vector2i(x, y), new Vector2i(x + 1, y + 1),
+                pixels -> callback.accept(pixels.length > 0 ? pixels[0] : -1));
     }
 
     /**
-     * Reads a pixel from the picking texture at a specified position.
+     * Requests the ids of the entities in a range of pixels between two specified points.
      *
-     * This method binds the framebuffer for reading, sets the read buffer to the color attachment, reads the pixel at the specified position, and returns the value of the pixel.
+     * The pixels are read back asynchronously after the frame is rendered, so the callback is called in a later frame
+     * by {@link #pollResults()}.
      *
-     * @param x The x-coordinate of the pixel.
-     * @param y The y-coordinate of the pixel.
-     * @return The value of the pixel.
+     * @param start The starting point of the range.
+     * @param end The ending point of the range.
+     * @param callback The callback that receives the ids of the pixels in the range, -1 where there is no entity.
      */
-    public int readPixel(int x, int y) {
-        glBindFramebuffer(GL_READ_FRAMEBUFFER, fbo);
-        glReadBuffer(GL_COLOR_ATTACHMENT0);
-
-        float[] pixels = new float[3];
-        glReadPixels(x, y, 1, 1, GL_RGB, GL_FLOAT, pixels);
-
-        return (int) (pixels[0]) - 1;
+    public void requestPixels(Vector2i start, Vector2i end, Consumer<int[]> callback) {
+        int x = Math.max(0, Math.min(start.x, end.x));
+        int y = Math.max(0, Math.min(start.y, end.y));
+        int width = Math.min(this.width, Math.max(start.x, end.x)) - x;
+        int height = Math.min(this.height, Math.max(start.y, end.y)) - y;
+        pendingRequests.add(new PickRequest(x, y, Math.max(0, width), Math.max(0, height), callback));
     }
 
     /**
-     * Reads a range of pixels from the picking texture between two specified points.
+     * Checks if a pick was requested since the pixels were last read.
      *
-     * This method binds the framebuffer for reading, sets the read buffer to the color attachment, reads the pixels in the specified range, and returns the values of the pixels.
-     *
-     * @param start The starting point of the range.
-     * @param end The ending point of the range.
-     * @return The values of the pixels in the specified range.
+     * @return True if there are requests waiting for {@link #readRequests()}, false otherwise.
      */
-    public float[] readPixels(Vector2i start, Vector2i end) {
-        glBindFramebuffer(GL_READ_FRAMEBUFFER, fbo);
-        glReadBuffer(GL_COLOR_ATTACHMENT0);
+    public boolean hasPendingRequests() {
+        return !pendingRequests.isEmpty();
+    }
 
-        Vector2i size = new Vector2i(end).sub(start).absolute();
-        int numPixels = size.x * size.y;
-        float[] pixels = new float[3 * numPixels];
-        glReadPixels(start.x, start.y, size.x, size.y, GL_RGB, GL_FLOAT, pixels);
+    /**
+     * Starts reading back the pixels of the pending requests.
+     *
+     * This method has to be called after the scene was rendered into the framebuffer. Every request
+     * copies its pixels into a pixel buffer object and places a fence after the copy, so the read does not wait
+     * for the GPU.
+     */
+    public void readRequests() {
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, framebuffer.getFboID());
+        glReadBuffer(GL_COLOR_ATTACHMENT1);
+        for (PickRequest request : pendingRequests) {
+            scaleToFramebuffer(request);
+            int bytes = request.width * request.height * Integer.BYTES;
+            if (bytes > 0) {
+                request.pbo = freePbos.isEmpty() ? glGenBuffers() : freePbos.remove(freePbos.size() - 1);
+                glBindBuffer(GL_PIXEL_PACK_BUFFER, request.pbo);
+                glBufferData(GL_PIXEL_PACK_BUFFER, bytes, GL_STREAM_READ);
+                glReadPixels(request.x, request.y, request.width, request.height,
+                        GL_RED_INTEGER, GL_UNSIGNED_INT, 0L);
+                request.fence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            }
+            requestsInFlight.add(request);
+        }
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, 0);
+        pendingRequests.clear();
+    }
 
-        for (int i = 0; i < pixels.length; i++){
-            pixels[i] -= 1;
+    /**
+     * Delivers the requests whose pixels have arrived.
+     *
+     * This method checks the fence of every request in flight without waiting, maps the pixel buffer of the ones
+     * the GPU has finished, and calls their callbacks with the ids of the entities.
+     */
+    public void pollResults() {
+        for (int i = 0; i < requestsInFlight.size(); i++) {
+            PickRequest request = requestsInFlight.get(i);
+            if (request.fence != 0) {
+                int status = glClientWaitSync(request.fence, 0, 0);
+                if (status != GL_ALREADY_SIGNALED && status != GL_CONDITION_SATISFIED) continue;
+            }
+
+            // Allocated only once the pixels arrived, so a pending request costs nothing per poll
+            int[] pixels = new int[request.width * request.height];
+            if (request.fence != 0) {
+                glDeleteSync(request.fence);
+
+                glBindBuffer(GL_PIXEL_PACK_BUFFER, request.pbo);
+                ByteBuffer mapped = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0,
+                        (long) pixels.length * Integer.BYTES, GL_MAP_READ_BIT);
+                if (mapped != null) {
+                    mapped.order(ByteOrder.nativeOrder()).asIntBuffer().get(pixels);
+                    glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+                }
+                glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+                freePbos.add(request.pbo);
+            }
+
+            for (int j = 0; j < pixels.length; j++){
+                pixels[j] -= 1;
+            }
+            requestsInFlight.remove(i);
+            i--;
+            request.callback.accept(pixels);
         }
+    }
 
-        return pixels;
+    /**
+     * A range of pixels requested from the picking texture, with the buffer and the fence of its readback.
+     */
+    private static class PickRequest {
+        private int x, y, width, height;
+        private final Consumer<int[]> callback;
+        private int pbo = 0;
+        private long fence = 0;
+
+        PickRequest(int x, int y, int width, int height, Consumer<int[]> callback) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.callback = callback;
+        }
     }
 }
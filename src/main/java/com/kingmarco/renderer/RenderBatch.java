@@ -1,89 +1,154 @@
 package com.kingmarco.renderer;
 
 import com.kingmarco.components.SpriteRenderer;
+import com.kingmarco.components.Transform;
 import com.kingmarco.forge.GameObject;
 import com.kingmarco.forge.Window;
-import org.joml.Matrix4f;
 import org.joml.Vector2f;
 import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glVertexAttribIPointer;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
 import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
 
 /**
  * A class responsible to create a batch of sprites to be rendered at the specific zIndex.
+ *
+ * A batch of the opaque pass holds opaque sprites of any zIndex instead, since the depth test draws them
+ * in the right order, so it is only split by chunk, kind and textures.
  * */
-public class RenderBatch implements Comparable<RenderBatch>{
-    // Vertex
+public class RenderBatch implements Comparable<RenderBatch>, RenderCommand {
+    // Vertex (28 bytes)
     // =======
-    // Pos               Color                          tex coords    tex id
-    //float, float,      float, float, float, float     float, float  float
+    // Pos                      Color                   tex coords        tex id  tex layer  entity id
+    //float, float, float,      ubyte x4 (normalized)   ushort x2 (norm)  ushort  ushort     uint
+    // The third component of the position is the zIndex of the sprite, which the shaders write as the depth
 
-    private final int POS_SIZE = 2;
+    private final int POS_SIZE = 3;
     private final int COLOR_SIZE = 4;
     private final int TEX_COORDS_SIZE = 2;
-    private final int TEX_ID_SIZE = 1;
-    private final int ENTITY_ID_SIZE = 1;
 
     private final int POS_OFFSET = 0;
     private final int COLOR_OFFSET = POS_OFFSET + POS_SIZE * Float.BYTES;
-    private final int TEX_COORDS_OFFSET = COLOR_OFFSET + COLOR_SIZE * Float.BYTES;
-    private final int TEX_ID_OFFSET = TEX_COORDS_OFFSET + TEX_COORDS_SIZE * Float.BYTES;
-    private final int ENTITY_ID_OFFSET = TEX_ID_OFFSET + TEX_ID_SIZE * Float.BYTES;
-    private final int VERTEX_SIZE = 10;
-    private final int VERTEX_SIZE_BYTES = VERTEX_SIZE * Float.BYTES;
-
-    private SpriteRenderer[] sprites;
-    private int numSprites;
+    private final int TEX_COORDS_OFFSET = COLOR_OFFSET + COLOR_SIZE;
+    private final int TEX_ID_OFFSET = TEX_COORDS_OFFSET + TEX_COORDS_SIZE * Short.BYTES;
+    private final int TEX_LAYER_OFFSET = TEX_ID_OFFSET + Short.BYTES;
+    private final int ENTITY_ID_OFFSET = TEX_LAYER_OFFSET + Short.BYTES;
+    private static final int VERTEX_SIZE_BYTES = 28;
+    private static final int QUAD_SIZE_BYTES = 4 * VERTEX_SIZE_BYTES;
+    // Upper bound of the sampler array, the shaders have a case for every slot up to this value
+    private static final int MAX_TEXTURE_SLOTS_LIMIT = 32;
+    private static int maxTextureSlots = -1;
+
+    protected SpriteRenderer[] sprites;
+    private Map<SpriteRenderer, Integer> spriteSlots;
+    protected int numSprites;
     private boolean hasRoom;
-    private float[] vertices;
-    private int[] texSlots = {0, 1, 2, 3, 4, 5, 6, 7};
+    // Off-heap vertices, written in place and streamed to the GPU without an intermediate copy
+    protected ByteBuffer vertices;
 
-    private List<Texture> textures;
-    private int vaoID, vboID;
-    private int maxBatchSize;
+    private List<TextureArray> textureArrays;
+    protected int vaoID, eboID;
+    protected VertexStream vertexStream;
+    protected int maxBatchSize;
     private int zIndex;
+    private long chunk;
+    // Static batches keep sprites that stopped changing in a GL_STATIC_DRAW buffer
+    private boolean isStatic;
+    // Opaque batches are drawn in the depth tested opaque pass, with sprites of any zIndex
+    private boolean isOpaque;
+    // Highest zIndex of the sprites, the batches of the opaque pass are drawn from the front to the back
+    private int frontZIndex;
+    // Set when the vertex data changed and has not been streamed to the GPU yet
+    private boolean pendingUpload;
+
+    // World space bounds of every sprite, {minX, minY, maxX, maxY} per slot, and of the whole batch
+    private float[] spriteBounds;
+    private float minX, minY, maxX, maxY;
+    private boolean boundsDirty;
 
     private Renderer renderer;
 
-    public RenderBatch(int maxBatchSize, int zIndex, Renderer renderer) {
+    public RenderBatch(int maxBatchSize, int zIndex, long chunk, boolean isStatic, boolean isOpaque, Renderer renderer) {
+        // 4 vertices quads
+        this(maxBatchSize, zIndex, chunk, isStatic, isOpaque, renderer, QUAD_SIZE_BYTES);
+    }
+
+    /**
+     * Constructs a RenderBatch whose sprites take a specified number of bytes in the vertex data.
+     *
+     * @param maxBatchSize The maximum number of sprites of the batch.
+     * @param zIndex The zIndex of the sprites of the batch.
+     * @param chunk The key of the area of the world where the sprites of the batch were added.
+     * @param isStatic True if the batch holds static sprites.
+     * @param isOpaque True if the batch holds opaque sprites of any zIndex.
+     * @param renderer The renderer that owns the batch.
+     * @param spriteSize The number of bytes of the vertex data of one sprite.
+     */
+    protected RenderBatch(int maxBatchSize, int zIndex, long chunk, boolean isStatic, boolean isOpaque,
+                          Renderer renderer, int spriteSize) {
         this.zIndex = zIndex;
+        this.frontZIndex = zIndex;
+        this.chunk = chunk;
+        this.isStatic = isStatic;
+        this.isOpaque = isOpaque;
         this.renderer = renderer;
 
         this.sprites = new SpriteRenderer[maxBatchSize];
+        this.spriteSlots = new HashMap<>();
+        this.spriteBounds = new float[4 * maxBatchSize];
         this.maxBatchSize = maxBatchSize;
 
-        // 4 vertices quads
-        vertices = new float[maxBatchSize * 4 * VERTEX_SIZE];
+        vertices = MemoryUtil.memAlloc(maxBatchSize * spriteSize);
+        vertexStream = new VertexStream(vertices.capacity(), isStatic);
 
         this.numSprites = 0;
         this.hasRoom = true;
-        this.textures = new ArrayList<>();
+        this.textureArrays = new ArrayList<>();
+    }
+
+    /**
+     * Returns the number of texture arrays a single batch can sample from.
+     *
+     * This method queries GL_MAX_TEXTURE_IMAGE_UNITS once and rounds it down to a multiple of 8,
+     * between 8 and 32 slots, so the size of the sampler array in the shaders matches the hardware.
+     *
+     * @return The number of texture slots of a batch.
+     */
+    public static int getMaxTextureSlots() {
+        if (maxTextureSlots < 0) {
+            int units = glGetInteger(GL_MAX_TEXTURE_IMAGE_UNITS);
+            maxTextureSlots = Math.max(8, Math.min(MAX_TEXTURE_SLOTS_LIMIT, units - units % 8));
+        }
+        return maxTextureSlots;
     }
 
     /**
      * Initializes the rendering process.
      *
-     * This method generates and binds a Vertex Array Object (VAO), allocates space for vertices,
+     * This method generates and binds a Vertex Array Object (VAO), starts the vertex stream,
      * creates and uploads an indices buffer, and enables the buffer attribute pointers.
      */
     public void start() {
         // Generate and bind a Vertex Array Object
         vaoID = glGenVertexArrays();
-        glBindVertexArray(vaoID);
+        GLState.bindVertexArray(vaoID);
 
         // Allocate space for vertices
-        vboID = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, vboID);
-        glBufferData(GL_ARRAY_BUFFER, (long) vertices.length * Float.BYTES, GL_DYNAMIC_DRAW);
+        vertexStream.start();
 
         // Create and upload indices buffer
-        int eboID = glGenBuffers();
+        eboID = glGenBuffers();
         int[] indices = generateIndices();
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
         glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
@@ -92,25 +157,31 @@ public class RenderBatch implements Comparable<RenderBatch>{
         glVertexAttribPointer(0, POS_SIZE, GL_FLOAT, false, VERTEX_SIZE_BYTES, POS_OFFSET);
         glEnableVertexAttribArray(0);
 
-        glVertexAttribPointer(1, COLOR_SIZE, GL_FLOAT, false, VERTEX_SIZE_BYTES, COLOR_OFFSET);
+        glVertexAttribPointer(1, COLOR_SIZE, GL_UNSIGNED_BYTE, true, VERTEX_SIZE_BYTES, COLOR_OFFSET);
         glEnableVertexAttribArray(1);
 
-        glVertexAttribPointer(2, TEX_COORDS_SIZE, GL_FLOAT, false, VERTEX_SIZE_BYTES, TEX_COORDS_OFFSET);
+        glVertexAttribPointer(2, TEX_COORDS_SIZE, GL_UNSIGNED_SHORT, true, VERTEX_SIZE_BYTES, TEX_COORDS_OFFSET);
         glEnableVertexAttribArray(2);
 
-        glVertexAttribPointer(3, TEX_ID_SIZE, GL_FLOAT, false, VERTEX_SIZE_BYTES, TEX_ID_OFFSET);
+        // Integer attributes, so the ids reach the shaders exactly
+        glVertexAttribIPointer(3, 1, GL_UNSIGNED_SHORT, VERTEX_SIZE_BYTES, TEX_ID_OFFSET);
         glEnableVertexAttribArray(3);
 
-        glVertexAttribPointer(4, ENTITY_ID_SIZE, GL_FLOAT, false, VERTEX_SIZE_BYTES, ENTITY_ID_OFFSET);
+        glVertexAttribIPointer(4, 1, GL_UNSIGNED_INT, VERTEX_SIZE_BYTES, ENTITY_ID_OFFSET);
         glEnableVertexAttribArray(4);
+
+        glVertexAttribIPointer(5, 1, GL_UNSIGNED_SHORT, VERTEX_SIZE_BYTES, TEX_LAYER_OFFSET);
+        glEnableVertexAttribArray(5);
     }
 
     /**
      * Adds a sprite to the render batch.
      *
-     * This method sets the sprite as dirty, gets the index and adds the sprite to the render batch,
-     * checks if the sprite has a texture and if it's not already in the textures list, adds it,
+     * This method sets the sprite as dirty, adds the sprite to the first free slot of the render batch,
+     * checks if the sprite has a texture and if its texture array is not already in the list, adds it,
      * loads the sprite properties to the local vertices array, and checks if the number of sprites has reached the maximum batch size.
+     * The used slots are always packed at the start of the batch, so the first free slot is the one
+     * left behind by the last removed sprite.
      *
      * @param spr The sprite to be added.
      */
@@ -120,16 +191,19 @@ public class RenderBatch implements Comparable<RenderBatch>{
         // Get Index and add renderObject
         int index = this.numSprites;
         this.sprites[index] = spr;
+        this.spriteSlots.put(spr, index);
         this.numSprites++;
 
         if (spr.getTexture() != null){
-            if (!textures.contains(spr.getTexture())){
-                textures.add(spr.getTexture());
+            TextureArray array = TextureArray.of(getRenderTexture(spr.getTexture()));
+            if (!textureArrays.contains(array)){
+                textureArrays.add(array);
             }
         }
 
         //Add properties to local vertices array
         loadVertexProperties(index);
+        pendingUpload = true;
 
         if (numSprites >= this.maxBatchSize) {
             this.hasRoom = false;
@@ -138,119 +212,206 @@ public class RenderBatch implements Comparable<RenderBatch>{
     }
 
     /**
-     * Renders the batches.
+     * Adds the textures of the dirty sprites to their texture arrays.
      *
-     * This method iterates over the sprites, checks if each sprite is dirty and if so,
-     * loads its properties to the local vertices array and sets it as not dirty,
-     * checks if the sprite's zIndex is different from the batch's zIndex and if so,
-     * destroys the sprite and adds it to the renderer, re-buffers the data if needed,
-     * uses the shader and uploads the projection and view matrices, binds the textures,
-     * uploads the texture slots, binds the VAO and enables the attribute pointers,
-     * draws the elements, disables the attribute pointers and unbinds the VAO,
-     * unbinds the textures, and detaches the shader.
+     * Adding a texture to an array uploads it to the GPU, so this method has to run on the thread of the GL context
+     * before {@link #prepare()}, which can then run on any thread.
+     */
+    public void registerTextures() {
+        for (int i=0; i < numSprites; i++){
+            SpriteRenderer spr = sprites[i];
+            if (spr.isDirty() && spr.getTexture() != null) {
+                TextureArray.of(getRenderTexture(spr.getTexture()));
+            }
+        }
+    }
+
+    /**
+     * Builds the vertices of the batch without any GL call.
      *
-     * @param shader The shader to be used for rendering.
+     * This method iterates over the live sprites, checks if each sprite is dirty and if so,
+     * loads its properties to the local vertices array and sets it as not dirty, and updates the bounds of the batch.
+     * Every sprite also counts whether it changed, and sprites that became static or dynamic, or opaque or translucent,
+     * are queued to be moved to a batch of the right kind. The highest zIndex of the sprites is kept for the order
+     * of the opaque pass. The method only touches the memory of this batch and its sprites,
+     * so the {@link Renderer} can prepare several batches in parallel.
      */
-    public void render(Shader shader) {
-        boolean reBufferData = false;
-        for (int i=0; i < sprites.length; i++){
+    public void prepare() {
+        int front = zIndex;
+        for (int i=0; i < numSprites; i++){
             SpriteRenderer spr = sprites[i];
-            if (spr == null){
-                continue;
+            if (isOpaque) {
+                front = Math.max(front, spr.gameObject.transform.getZIndex());
             }
-            if (spr.isDirty()) {
+            boolean changed = spr.isDirty();
+            if (changed) {
                 loadVertexProperties(i);
                 spr.setDirty(false);
-                reBufferData = true;
+                pendingUpload = true;
             }
-
-            // TODO: Get better solution for this
-            if (spr.gameObject.transform.zIndex != this.zIndex){
-                destroyIfExists(spr.gameObject);
-                renderer.add(spr.gameObject);
-                i--;
+            spr.countRender(changed);
+            if (spr.isStatic() != isStatic) {
+                spr.staticStateChanged();
+            }
+            if (renderer.isOpaque(spr) != isOpaque) {
+                spr.opacityChanged();
             }
         }
+        frontZIndex = front;
 
-        reBufferData(reBufferData);
-
-        //Use shader
-        shader.use();
-        shader.uploadMat4f("uProjection", Window.getScene().camera().getProjectionMatrix());
-        shader.uploadMat4f("uView", Window.getScene().camera().getViewMatrix());
-        for (int i=0; i < textures.size(); i++) {
-            glActiveTexture(GL_TEXTURE0 + i + 1);
-            textures.get(i).bind();
+        if (boundsDirty) {
+            updateBounds();
         }
-        shader.uploadIntArray("uTextures", texSlots);
+    }
 
-        glBindVertexArray(vaoID);
-        glEnableVertexAttribArray(0);
-        glEnableVertexAttribArray(1);
+    /**
+     * Checks if the bounds of the batch are inside the camera.
+     *
+     * @return True if the batch can be seen, false if it can be culled.
+     */
+    public boolean isVisible() {
+        return Window.getScene().camera().isVisible(minX, minY, maxX, maxY);
+    }
 
-        glDrawElements(GL_TRIANGLES, this.numSprites * 6, GL_UNSIGNED_INT, 0);
+    /**
+     * Returns the texture that the batch is sorted by in the {@link RenderQueue}.
+     *
+     * @return The ID of the first texture array of the batch, or 0 if it has none.
+     */
+    public int getSortTexture() {
+        return textureArrays.isEmpty() ? 0 : textureArrays.get(0).getTexID();
+    }
 
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glBindVertexArray(0);
+    /**
+     * Renders the batch.
+     *
+     * The vertices have to be built with {@link #prepare()} first, and batches outside the camera are culled
+     * by the {@link Renderer} before they are submitted, so their changes stay pending until they are visible.
+     * This method re-buffers the data if needed, uses the shader and binds the texture arrays through the queue,
+     * which skips what is already bound, and draws the sprites.
+     * Sprites that change their zIndex are moved by the {@link Renderer} before the batches are rendered.
+     *
+     * @param queue The queue that dispatches the batch.
+     * @param shader The shader to be used for rendering.
+     */
+    @Override
+    public void execute(RenderQueue queue, Shader shader) {
+        reBufferData(pendingUpload);
+        pendingUpload = false;
 
-        for (int i=0; i < textures.size(); i++) {
-            textures.get(i).unbind();
+        queue.useShader(shader);
+        for (int i=0; i < textureArrays.size(); i++) {
+            queue.bindTextureArray(i, textureArrays.get(i));
         }
-        shader.detach();
+
+        draw();
+        RenderStats.addDrawCall(numSprites);
     }
 
 
+    /**
+     * Draws the sprites of the batch.
+     *
+     * This method binds the VAO, whose attribute pointers stay enabled since {@link #start()}, draws the elements
+     * from the region of the vertex stream that was just written and places a fence after the draw.
+     */
+    protected void draw() {
+        GLState.bindVertexArray(vaoID);
+        glDrawElementsBaseVertex(GL_TRIANGLES, this.numSprites * 6, GL_UNSIGNED_INT, 0,
+                vertexStream.getBaseVertex(VERTEX_SIZE_BYTES));
+        vertexStream.fence();
+    }
+
+    /**
+     * Stores the world space bounds of the sprite at a slot.
+     *
+     * @param index The slot of the sprite.
+     * @param minX The left edge of the sprite.
+     * @param minY The bottom edge of the sprite.
+     * @param maxX The right edge of the sprite.
+     * @param maxY The top edge of the sprite.
+     */
+    protected void setSpriteBounds(int index, float minX, float minY, float maxX, float maxY) {
+        int offset = 4 * index;
+        spriteBounds[offset] = minX;
+        spriteBounds[offset + 1] = minY;
+        spriteBounds[offset + 2] = maxX;
+        spriteBounds[offset + 3] = maxY;
+        boundsDirty = true;
+    }
+
+    /**
+     * Recomputes the bounds of the batch from the bounds of its sprites.
+     */
+    private void updateBounds() {
+        minX = minY = Float.POSITIVE_INFINITY;
+        maxX = maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < numSprites; i++) {
+            int offset = 4 * i;
+            minX = Math.min(minX, spriteBounds[offset]);
+            minY = Math.min(minY, spriteBounds[offset + 1]);
+            maxX = Math.max(maxX, spriteBounds[offset + 2]);
+            maxY = Math.max(maxY, spriteBounds[offset + 3]);
+        }
+        boundsDirty = false;
+    }
+
     /**
      * Re-buffers the data if the reBufferData parameter is true.
-     * It binds the buffer to the vboID and then updates the buffer data with the vertices.
+     * It streams only the byte ranges of the sprites that changed to the GPU through the vertex stream.
      *
      * @param reBufferData A boolean indicating whether to re-buffer the data.
      */
     private void reBufferData(boolean reBufferData) {
         if (reBufferData){
-            glBindBuffer(GL_ARRAY_BUFFER, vboID);
-            glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+            vertexStream.flush(vertices);
         }
     }
 
     /**
      * Loads the properties of the vertex at the given index.
-     * It retrieves the sprite at the index, calculates the offset, and loads various properties such as color,
-     * texture coordinates, texture id, and entity id.
+     * It retrieves the sprite at the index, calculates the offset, loads various properties such as color,
+     * texture coordinates, texture slot, texture layer and entity id, stores the bounds of the quad,
+     * and marks the bytes of the quad as dirty.
+     * A texture whose array is not bound by the batch yet is added to it if there is a free slot.
+     * When the texture was packed into the atlas, the quad is shrunk to the trimmed part of the texture
+     * and the texture coordinates are mapped into the atlas page.
      *
      * @param index The index of the vertex whose properties are to be loaded.
      */
-    private void loadVertexProperties(int index) {
+    protected void loadVertexProperties(int index) {
         SpriteRenderer sprite = this.sprites[index];
 
         // Find offset within array (4 vertices per sprite)
-        int offset = index * 4 * VERTEX_SIZE;
+        int offset = index * QUAD_SIZE_BYTES;
 
         Vector4f color = sprite.getColor();
         Vector2f[] texCoords = sprite.getTexCoords();
-
-        int texId = 0;
-        if (sprite.getTexture() != null){
-            for (int i=0; i< textures.size(); i++){
-                if (textures.get(i).equals(sprite.getTexture())){
-                    texId = i + 1;
-                    break;
-                }
-            }
+        float zIndex = sprite.gameObject.transform.getZIndex();
+
+        int texId = getTextureSlot(sprite);
+        int texLayer = 0;
+        AtlasRegion region = null;
+        if (texId > 0){
+            texLayer = getRenderTexture(sprite.getTexture()).getArrayLayer();
+            region = sprite.getTexture().getAtlasRegion();
         }
-
-        boolean isRotated = sprite.gameObject.transform.rotation != 0.0f;
-        Matrix4f transformMatrix = new Matrix4f().identity();
-        if (isRotated) {
-            transformMatrix.translate(sprite.gameObject.transform.position.x,
-                                        sprite.gameObject.transform.position.y, 0f);
-            transformMatrix.rotate((float)Math.toRadians(sprite.gameObject.transform.rotation),
-                    0, 0, 1);
-            transformMatrix.scale(sprite.gameObject.transform.scale.x,
-                    sprite.gameObject.transform.scale.y, 1);
+        // Change of the texture coordinates across the width and the height of the quad
+        float uSpan = texCoords[0].x - texCoords[2].x;
+        float vSpan = texCoords[0].y - texCoords[1].y;
+
+        // The corners are scaled, rotated and translated with scalars, since this runs for every dirty sprite
+        // on the worker threads and a matrix or vector per sprite would be garbage
+        Transform transform = sprite.gameObject.transform;
+        float sin = 0.0f, cos = 1.0f;
+        if (transform.rotation != 0.0f) {
+            sin = (float) Math.sin(Math.toRadians(transform.rotation));
+            cos = (float) Math.cos(Math.toRadians(transform.rotation));
         }
 
+        float quadMinX = Float.POSITIVE_INFINITY, quadMinY = Float.POSITIVE_INFINITY;
+        float quadMaxX = Float.NEGATIVE_INFINITY, quadMaxY = Float.NEGATIVE_INFINITY;
+
         //Add vertice with the appropriate properties
         float xAdd = 0.5f;
         float yAdd = 0.5f;
@@ -263,36 +424,110 @@ public class RenderBatch implements Comparable<RenderBatch>{
                 yAdd = 0.5f;
             }
 
-            Vector4f currentPos = new Vector4f(sprite.gameObject.transform.position.x +
-                                                (xAdd * sprite.gameObject.transform.scale.x),
-                                            sprite.gameObject.transform.position.y +
-                                                (yAdd * sprite.gameObject.transform.scale.y),
-                                            0, 1);
-            if (isRotated) {
-                currentPos = new Vector4f(xAdd, yAdd, 0, 1).mul(transformMatrix);
+            float u = texCoords[i].x;
+            float v = texCoords[i].y;
+            float xLocal = xAdd;
+            float yLocal = yAdd;
+            if (region != null) {
+                // Move the corner to the edge of the trimmed part, then map it into the page
+                float uClamped = region.clampU(u);
+                float vClamped = region.clampV(v);
+                if (uSpan != 0) xLocal += (uClamped - u) / uSpan;
+                if (vSpan != 0) yLocal += (vClamped - v) / vSpan;
+                u = region.mapU(uClamped);
+                v = region.mapV(vClamped);
             }
+
+            float scaledX = xLocal * transform.scale.x;
+            float scaledY = yLocal * transform.scale.y;
+            float x = transform.position.x + scaledX * cos - scaledY * sin;
+            float y = transform.position.y + scaledX * sin + scaledY * cos;
+            quadMinX = Math.min(quadMinX, x);
+            quadMinY = Math.min(quadMinY, y);
+            quadMaxX = Math.max(quadMaxX, x);
+            quadMaxY = Math.max(quadMaxY, y);
             // Load position
-            vertices[offset] = currentPos.x;
-            vertices[offset + 1] = currentPos.y;
+            vertices.putFloat(offset + POS_OFFSET, x);
+            vertices.putFloat(offset + POS_OFFSET + Float.BYTES, y);
+            vertices.putFloat(offset + POS_OFFSET + 2 * Float.BYTES, zIndex);
 
             //Load color
-            vertices[offset + 2] = color.x;
-            vertices[offset + 3] = color.y;
-            vertices[offset + 4] = color.z;
-            vertices[offset + 5] = color.w;
+            putColor(vertices, offset + COLOR_OFFSET, color);
 
             //Load texture coordinates
-            vertices[offset + 6] = texCoords[i].x;
-            vertices[offset + 7] = texCoords[i].y;
+            vertices.putShort(offset + TEX_COORDS_OFFSET, toUnorm16(u));
+            vertices.putShort(offset + TEX_COORDS_OFFSET + Short.BYTES, toUnorm16(v));
 
-            // Load texture id
-            vertices[offset + 8] = texId;
+            // Load texture id and layer
+            vertices.putShort(offset + TEX_ID_OFFSET, (short) texId);
+            vertices.putShort(offset + TEX_LAYER_OFFSET, (short) texLayer);
 
             //Load entity id
-            vertices[offset + 9] = sprite.gameObject.getUid() + 1;
+            vertices.putInt(offset + ENTITY_ID_OFFSET, sprite.gameObject.getUid() + 1);
 
-            offset += VERTEX_SIZE;
+            offset += VERTEX_SIZE_BYTES;
         }
+
+        setSpriteBounds(index, quadMinX, quadMinY, quadMaxX, quadMaxY);
+        vertexStream.markDirty(index * QUAD_SIZE_BYTES, QUAD_SIZE_BYTES);
+    }
+
+    /**
+     * Writes a color as four normalized unsigned bytes.
+     *
+     * @param buffer The buffer to write to.
+     * @param offset The byte offset of the color.
+     * @param color The color, with components between 0 and 1.
+     */
+    protected static void putColor(ByteBuffer buffer, int offset, Vector4f color) {
+        buffer.put(offset, toUnorm8(color.x));
+        buffer.put(offset + 1, toUnorm8(color.y));
+        buffer.put(offset + 2, toUnorm8(color.z));
+        buffer.put(offset + 3, toUnorm8(color.w));
+    }
+
+    /**
+     * Converts a value between 0 and 1 to a normalized unsigned byte.
+     *
+     * @param value The value to convert.
+     * @return The normalized byte.
+     */
+    private static byte toUnorm8(float value) {
+        return (byte) Math.round(Math.max(0f, Math.min(1f, value)) * 255f);
+    }
+
+    /**
+     * Converts a texture coordinate between 0 and 1 to a normalized unsigned short.
+     *
+     * Unlike a half float, a normalized short keeps the same precision over the whole range,
+     * which is finer than a texel of the largest atlas page.
+     *
+     * @param value The value to convert.
+     * @return The normalized short.
+     */
+    protected static short toUnorm16(float value) {
+        return (short) Math.round(Math.max(0f, Math.min(1f, value)) * 65535f);
+    }
+
+    /**
+     * Returns the texture slot of the texture of a sprite.
+     *
+     * This method adds the texture array of the texture to the batch if it is not bound by the batch yet
+     * and there is a free slot.
+     *
+     * @param sprite The sprite whose texture is looked up.
+     * @return The texture slot plus one, or 0 if the sprite has no texture or there is no room for it.
+     */
+    protected int getTextureSlot(SpriteRenderer sprite) {
+        if (sprite.getTexture() == null) return 0;
+
+        TextureArray array = TextureArray.of(getRenderTexture(sprite.getTexture()));
+        int slot = textureArrays.indexOf(array);
+        if (slot < 0 && hasTextureRoom()) {
+            textureArrays.add(array);
+            slot = textureArrays.size() - 1;
+        }
+        return slot + 1;
     }
 
     /**
@@ -340,47 +575,55 @@ public class RenderBatch implements Comparable<RenderBatch>{
      * @return A boolean indicating whether the GameObject was destroyed.
      */
     public boolean destroyIfExists(GameObject go) {
-        SpriteRenderer sprite = go.getComponent(SpriteRenderer.class);
-        int spriteIndex = findSpriteIndex(sprite);
-
-        if (spriteIndex != -1) {
-            shiftSpritesLeft(spriteIndex);
-            numSprites--;
-            if (numSprites <= 0){
-                renderer.removeRenderBatch(this);
-            }
-            return true;
-        }
-
-        return false;
+        return removeSprite(go.getComponent(SpriteRenderer.class));
     }
 
     /**
-     * Finds the index of the given SpriteRenderer in the sprites array.
+     * Removes a sprite from the render batch if it exists.
      *
-     * @param sprite The SpriteRenderer to find.
-     * @return The index of the SpriteRenderer, or -1 if it is not found.
+     * This method finds the slot of the sprite in the slot map, moves the last sprite of the batch into that slot
+     * so the used slots stay packed, and reloads only the moved quad, which is uploaded in the next render
+     * even if no sprite is dirty. Removing a sprite costs O(1) and never dirties more than one quad.
+     *
+     * @param sprite The sprite to remove.
+     * @return A boolean indicating whether the sprite was removed.
      */
-    private int findSpriteIndex(SpriteRenderer sprite) {
-        for (int i = 0; i < numSprites; i++) {
-            if (sprites[i] == sprite) {
-                return i;
-            }
+    public boolean removeSprite(SpriteRenderer sprite) {
+        Integer slot = spriteSlots.remove(sprite);
+        if (slot == null) {
+            return false;
+        }
+
+        int lastSlot = numSprites - 1;
+        if (slot != lastSlot) {
+            SpriteRenderer lastSprite = sprites[lastSlot];
+            sprites[slot] = lastSprite;
+            spriteSlots.put(lastSprite, slot);
+            loadVertexProperties(slot);
+            pendingUpload = true;
         }
-        return -1;
+        sprites[lastSlot] = null;
+        numSprites--;
+        hasRoom = true;
+        boundsDirty = true;
+
+        if (numSprites <= 0){
+            renderer.removeRenderBatch(this);
+        }
+        return true;
     }
 
     /**
-     * Shifts the sprites in the sprites array to the left starting from the given index.
+     * Destroys the RenderBatch.
      *
-     * @param startIndex The index from which to start shifting.
+     * This method deletes the vertex stream, the indices buffer and the VAO, and frees the off-heap vertices.
      */
-    private void shiftSpritesLeft(int startIndex) {
-        for (int i = startIndex; i < sprites.length; i++) {
-            sprites[i] = sprites[i + 1];
-            if (sprites[i+1] == null) break;
-            sprites[i].setDirty(true);
-        }
+    public void destroy() {
+        vertexStream.destroy();
+        glDeleteBuffers(eboID);
+        glDeleteVertexArrays(vaoID);
+        MemoryUtil.memFree(vertices);
+        vertices = null;
     }
 
     /**
@@ -393,22 +636,32 @@ public class RenderBatch implements Comparable<RenderBatch>{
     }
 
     /**
-     * Checks if the RenderBatch has room for more textures.
+     * Checks if the RenderBatch has room for more texture arrays.
      *
      * @return A boolean indicating whether the RenderBatch has texture room.
      */
     public boolean hasTextureRoom() {
-        return this.textures.size() < 8;
+        return this.textureArrays.size() < getMaxTextureSlots();
     }
 
     /**
-     * Checks if the RenderBatch contains the given texture.
+     * Checks if the RenderBatch contains the texture array that holds the given texture.
      *
      * @param tex The texture to check.
      * @return A boolean indicating whether the RenderBatch contains the texture.
      */
     public boolean hasTexture(Texture tex) {
-        return this.textures.contains(tex);
+        return this.textureArrays.contains(TextureArray.of(getRenderTexture(tex)));
+    }
+
+    /**
+     * Returns the texture that is sampled to render a texture, which is its atlas page if it was packed.
+     *
+     * @param tex The texture of a sprite.
+     * @return The texture to bind.
+     */
+    protected static Texture getRenderTexture(Texture tex) {
+        return tex.getAtlasRegion() != null ? tex.getAtlasRegion().getPage() : tex;
     }
 
     /**
@@ -420,6 +673,51 @@ public class RenderBatch implements Comparable<RenderBatch>{
         return this.zIndex;
     }
 
+    /**
+     * Gets the highest zIndex of the sprites of the RenderBatch, as of the last {@link #prepare()}.
+     *
+     * @return The highest zIndex of the sprites.
+     */
+    public int getFrontZIndex() {
+        return this.frontZIndex;
+    }
+
+    /**
+     * Gets the key of the area of the world where the sprites of the RenderBatch were added.
+     *
+     * @return The chunk key of the RenderBatch.
+     */
+    public long getChunk() {
+        return this.chunk;
+    }
+
+    /**
+     * Gets the number of sprites of the RenderBatch.
+     *
+     * @return The number of sprites.
+     */
+    public int getNumSprites() {
+        return this.numSprites;
+    }
+
+    /**
+     * Checks if the RenderBatch holds static sprites.
+     *
+     * @return True if the sprites are kept in a GL_STATIC_DRAW buffer, false if they are streamed.
+     */
+    public boolean isStatic() {
+        return this.isStatic;
+    }
+
+    /**
+     * Checks if the RenderBatch is drawn in the opaque pass.
+     *
+     * @return True if the batch holds opaque sprites of any zIndex, false if it holds sprites of a single zIndex.
+     */
+    public boolean isOpaque() {
+        return this.isOpaque;
+    }
+
     /**
      * Compares this RenderBatch with another based on their z-indices.
      *
@@ -0,0 +1,16 @@
+package com.kingmarco.renderer;
+
+/**
+ * A draw command that can be submitted to a {@link RenderQueue}.
+ */
+public interface RenderCommand {
+    /**
+     * Draws the command.
+     *
+     * The command binds its shader and textures through the queue, so the state that is already bound is skipped.
+     *
+     * @param queue The queue that dispatches the command.
+     * @param shader The shader the command was submitted with.
+     */
+    void execute(RenderQueue queue, Shader shader);
+}
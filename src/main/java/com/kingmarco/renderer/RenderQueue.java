@@ -0,0 +1,194 @@
+package com.kingmarco.renderer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
+
+/**
+ * The RenderQueue class collects the draw commands of a render pass, sorts them and dispatches them.
+ *
+ * Every command is a {@link RenderCommand} with a 64-bit sort key, built with {@link #key(int, int, Shader, int, int)}
+ * from the layer, the order inside the layer, the shader, the texture and the submission order, from the most
+ * to the least significant bits. The keys are radix sorted once per pass, so commands that share a shader and
+ * textures end up next to each other, and {@link GLState} skips the shader, texture and VAO changes that would
+ * bind what is already bound, while the shaders skip the uniforms that already hold the same values.
+ * The commands of the opaque pass, which is depth tested, use {@link #opaqueKey(Shader, int, int, int)} instead,
+ * which sorts them by shader and texture first, and then from the front to the back.
+ */
+public class RenderQueue {
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private long[] keys = new long[64];
+    private int[] items = new int[64];
+    private long[] sortedKeys = new long[64];
+    private int[] sortedItems = new int[64];
+    private final int[] counts = new int[RADIX];
+    private final List<RenderCommand> commands = new ArrayList<>();
+    private final List<Shader> commandShaders = new ArrayList<>();
+    private final List<Shader> shaders = new ArrayList<>();
+    private int size = 0;
+
+    private final int[] texSlots;
+
+    public RenderQueue() {
+        this.texSlots = new int[RenderBatch.getMaxTextureSlots()];
+        for (int i = 0; i < texSlots.length; i++) {
+            texSlots[i] = i;
+        }
+    }
+
+    /**
+     * Builds the sort key of a command.
+     *
+     * @param layer The zIndex of the command, commands of lower layers are drawn first.
+     * @param order The order of the command inside its layer, from 0 to 15.
+     * @param shader The shader of the command.
+     * @param texture The ID of the main texture of the command, or 0 if it has none.
+     * @param sequence The submission order, which keeps the sort stable.
+     * @return The sort key.
+     */
+    public long key(int layer, int order, Shader shader, int texture, int sequence) {
+        int shaderIndex = shaders.indexOf(shader);
+        if (shaderIndex < 0) {
+            shaders.add(shader);
+            shaderIndex = shaders.size() - 1;
+        }
+        return ((long) ((layer + 0x8000) & 0xFFFF) << 48)
+                | ((long) (order & 0xF) << 44)
+                | ((long) (shaderIndex & 0xFF) << 36)
+                | ((long) (texture & 0xFFFF) << 20)
+                | (sequence & 0xFFFFF);
+    }
+
+    /**
+     * Builds the sort key of a command of the opaque pass.
+     *
+     * The depth test draws the layers in the right order whatever the order of the commands, so the commands
+     * are grouped by shader and texture, and the ones closer to the camera are drawn first, so the
+     * hidden pixels of the others are rejected before their fragment shader runs.
+     *
+     * @param shader The shader of the command.
+     * @param texture The ID of the main texture of the command, or 0 if it has none.
+     * @param frontLayer The highest zIndex drawn by the command.
+     * @param sequence The submission order, which keeps the sort stable.
+     * @return The sort key.
+     */
+    public long opaqueKey(Shader shader, int texture, int frontLayer, int sequence) {
+        int shaderIndex = shaders.indexOf(shader);
+        if (shaderIndex < 0) {
+            shaders.add(shader);
+            shaderIndex = shaders.size() - 1;
+        }
+        int depth = 0x7FFF - Math.max(-0x8000, Math.min(0x7FFF, frontLayer));
+        return ((long) (shaderIndex & 0xFF) << 56)
+                | ((long) (texture & 0xFFFF) << 40)
+                | ((long) (depth & 0xFFFF) << 20)
+                | (sequence & 0xFFFFF);
+    }
+
+    /**
+     * Adds a command to the queue.
+     *
+     * @param key The sort key of the command.
+     * @param command The command to execute.
+     * @param shader The shader the command draws with.
+     */
+    public void submit(long key, RenderCommand command, Shader shader) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            items = Arrays.copyOf(items, size * 2);
+            sortedKeys = new long[size * 2];
+            sortedItems = new int[size * 2];
+        }
+        keys[size] = key;
+        items[size] = commands.size();
+        commands.add(command);
+        commandShaders.add(shader);
+        size++;
+    }
+
+    /**
+     * Sorts the commands by key and executes them in order, then clears the queue.
+     *
+     * The cached GL state is invalidated first, because textures and buffers are created and bound directly
+     * between the passes.
+     */
+    public void dispatch() {
+        GLState.invalidate();
+        sort();
+        for (int i = 0; i < size; i++) {
+            int item = items[i];
+            commands.get(item).execute(this, commandShaders.get(item));
+        }
+        // Textures created after the pass are bound to the first unit, like before it
+        GLState.activeTexture(0);
+        clear();
+    }
+
+    /**
+     * Sorts the keys with a least significant digit radix sort, carrying the command indices along.
+     * Digits that are the same for every key are skipped.
+     */
+    private void sort() {
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+            }
+            if (size == 0 || counts[(int) (keys[0] >>> shift) & (RADIX - 1)] == size) continue;
+
+            int total = 0;
+            for (int i = 0; i < RADIX; i++) {
+                int count = counts[i];
+                counts[i] = total;
+                total += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int position = counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+                sortedKeys[position] = keys[i];
+                sortedItems[position] = items[i];
+            }
+
+            long[] swapKeys = keys;
+            keys = sortedKeys;
+            sortedKeys = swapKeys;
+            int[] swapItems = items;
+            items = sortedItems;
+            sortedItems = swapItems;
+        }
+    }
+
+    /**
+     * Uses a shader and uploads the texture slots to it, the camera matrices come from the {@link CameraBuffer}.
+     * The program and the uniforms that did not change since the last command are skipped.
+     *
+     * @param shader The shader to use.
+     */
+    public void useShader(Shader shader) {
+        shader.use();
+        shader.uploadIntArray("uTextures", texSlots);
+    }
+
+    /**
+     * Binds a texture array to a texture unit, unless it is already bound there.
+     *
+     * @param unit The texture unit.
+     * @param textureArray The texture array to bind.
+     */
+    public void bindTextureArray(int unit, TextureArray textureArray) {
+        GLState.bindTexture(unit, GL_TEXTURE_2D_ARRAY, textureArray.getTexID());
+    }
+
+    /**
+     * Removes every command from the queue.
+     */
+    public void clear() {
+        size = 0;
+        commands.clear();
+        commandShaders.clear();
+        shaders.clear();
+    }
+}
@@ -0,0 +1,213 @@
+package com.kingmarco.renderer;
+
+/**
+ * The RenderStats class collects the counters of the renderer for every frame.
+ *
+ * The renderer adds to the counters of the current frame while it renders, and the values of the last
+ * finished frame can be read at any time, so they stay stable while the editor displays them.
+ */
+public class RenderStats {
+    private static long bytesUploaded = 0;
+    private static int uploads = 0;
+    private static int drawCalls = 0;
+    private static int glCalls = 0;
+    private static int skippedGlCalls = 0;
+    private static int spritesDrawn = 0;
+    private static long renderNanos = 0;
+    private static long prepareNanos = 0;
+    private static int culledBatches = 0;
+    private static int spritesCulled = 0;
+
+    private static long lastBytesUploaded = 0;
+    private static int lastUploads = 0;
+    private static int lastDrawCalls = 0;
+    private static int lastGlCalls = 0;
+    private static int lastSkippedGlCalls = 0;
+    private static int lastSpritesDrawn = 0;
+    private static long lastRenderNanos = 0;
+    private static long lastPrepareNanos = 0;
+    private static int lastCulledBatches = 0;
+    private static int lastSpritesCulled = 0;
+
+    /**
+     * Begins a new frame.
+     *
+     * This method stores the counters of the frame that just finished and resets the current ones.
+     */
+    public static void beginFrame() {
+        lastBytesUploaded = bytesUploaded;
+        lastUploads = uploads;
+        lastDrawCalls = drawCalls;
+        lastGlCalls = glCalls;
+        lastSkippedGlCalls = skippedGlCalls;
+        lastSpritesDrawn = spritesDrawn;
+        lastRenderNanos = renderNanos;
+        lastPrepareNanos = prepareNanos;
+        lastCulledBatches = culledBatches;
+        lastSpritesCulled = spritesCulled;
+
+        bytesUploaded = 0;
+        uploads = 0;
+        drawCalls = 0;
+        glCalls = 0;
+        skippedGlCalls = 0;
+        spritesDrawn = 0;
+        renderNanos = 0;
+        prepareNanos = 0;
+        culledBatches = 0;
+        spritesCulled = 0;
+    }
+
+    /**
+     * Registers an upload of vertex data to the GPU.
+     *
+     * @param bytes The number of bytes uploaded.
+     */
+    public static void addUpload(long bytes) {
+        bytesUploaded += bytes;
+        uploads++;
+    }
+
+    /**
+     * Registers a draw call of a render batch.
+     *
+     * @param sprites The number of sprites drawn by the call.
+     */
+    public static void addDrawCall(int sprites) {
+        drawCalls++;
+        glCalls++;
+        spritesDrawn += sprites;
+    }
+
+    /**
+     * Registers a state change or uniform upload made through {@link GLState} or a {@link Shader}.
+     */
+    public static void addGlCall() {
+        glCalls++;
+    }
+
+    /**
+     * Registers a state change or uniform upload that was skipped because the value was already set.
+     */
+    public static void addSkippedGlCall() {
+        skippedGlCalls++;
+    }
+
+    /**
+     * Registers a render batch that was skipped because it is outside the camera.
+     *
+     * @param sprites The number of sprites of the batch.
+     */
+    public static void addCulledBatch(int sprites) {
+        culledBatches++;
+        spritesCulled += sprites;
+    }
+
+    /**
+     * Registers the CPU time spent rendering the sprites of the scene.
+     *
+     * @param nanos The time spent, in nanoseconds.
+     */
+    public static void addRenderTime(long nanos) {
+        renderNanos += nanos;
+    }
+
+    /**
+     * Registers the time spent building the vertices of the render batches.
+     *
+     * @param nanos The time spent, in nanoseconds.
+     */
+    public static void addPrepareTime(long nanos) {
+        prepareNanos += nanos;
+    }
+
+    /**
+     * Returns the number of bytes uploaded during the last frame.
+     *
+     * @return The number of bytes uploaded.
+     */
+    public static long getBytesUploaded() {
+        return lastBytesUploaded;
+    }
+
+    /**
+     * Returns the number of uploads during the last frame.
+     *
+     * @return The number of uploads.
+     */
+    public static int getUploads() {
+        return lastUploads;
+    }
+
+    /**
+     * Returns the number of draw calls of the render batches during the last frame.
+     *
+     * @return The number of draw calls.
+     */
+    public static int getDrawCalls() {
+        return lastDrawCalls;
+    }
+
+    /**
+     * Returns the number of state changes, uniform uploads and draw calls during the last frame.
+     *
+     * @return The number of GL calls.
+     */
+    public static int getGlCalls() {
+        return lastGlCalls;
+    }
+
+    /**
+     * Returns the number of state changes and uniform uploads skipped during the last frame.
+     *
+     * @return The number of skipped GL calls.
+     */
+    public static int getSkippedGlCalls() {
+        return lastSkippedGlCalls;
+    }
+
+    /**
+     * Returns the number of sprites drawn during the last frame.
+     *
+     * @return The number of sprites drawn.
+     */
+    public static int getSpritesDrawn() {
+        return lastSpritesDrawn;
+    }
+
+    /**
+     * Returns the CPU time spent rendering the sprites during the last frame, in milliseconds.
+     *
+     * @return The render time in milliseconds.
+     */
+    public static float getRenderMillis() {
+        return lastRenderNanos / 1_000_000f;
+    }
+
+    /**
+     * Returns the time spent building the vertices of the render batches during the last frame, in milliseconds.
+     *
+     * @return The vertex build time in milliseconds.
+     */
+    public static float getPrepareMillis() {
+        return lastPrepareNanos / 1_000_000f;
+    }
+
+    /**
+     * Returns the number of render batches culled during the last frame.
+     *
+     * @return The number of culled batches.
+     */
+    public static int getCulledBatches() {
+        return lastCulledBatches;
+    }
+
+    /**
+     * Returns the number of sprites culled during the last frame.
+     *
+     * @return The number of culled sprites.
+     */
+    public static int getSpritesCulled() {
+        return lastSpritesCulled;
+    }
+}
@@ -1,31 +1,54 @@
 package com.kingmarco.renderer;
 
 import com.kingmarco.components.SpriteRenderer;
+import com.kingmarco.components.Tilemap;
 import com.kingmarco.forge.GameObject;
+import com.kingmarco.util.Settings;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.lwjgl.opengl.GL11.*;
 
 /**
  * The Renderer class handles the rendering of game objects.
  *
  * This class provides methods to add game objects and their sprites to render batches,
  * destroy game objects, bind and get the bound shader, render the batches, and remove render batches.
+ * With {@link Settings#OPAQUE_DEPTH_PASS}, the opaque sprites are drawn first with the depth test, in batches
+ * that mix every zIndex, and the translucent sprites and the tilemaps are drawn after them from the back to the front.
  */
 public class Renderer {
     private static Shader currentShader;
+    private static Shader currentTilemapShader;
     private final int MAX_BATCH_SIZE = 1000;
     private List<RenderBatch> batches;
+    private List<RenderBatch> retiredBatches;
+    private Map<SpriteRenderer, RenderBatch> spriteBatches;
+    private Set<SpriteRenderer> pendingRebuckets;
+    private List<TilemapRenderer> tilemaps;
+    private RenderQueue queue;
+    // Read once, the batches of the opaque pass can not be drawn without the depth test
+    private final boolean opaquePass = Settings.OPAQUE_DEPTH_PASS;
 
     public Renderer() {
         this.batches = new ArrayList<>();
+        this.retiredBatches = new ArrayList<>();
+        this.spriteBatches = new HashMap<>();
+        this.pendingRebuckets = new LinkedHashSet<>();
+        this.tilemaps = new ArrayList<>();
+        this.queue = new RenderQueue();
     }
 
     /**
      * Adds a game object to a render batch.
      *
      * This method gets the SpriteRenderer component of the game object and adds it to a render batch.
+     * A Tilemap component gets a TilemapRenderer of its own instead.
      *
      * @param go The game object to be added.
      */
@@ -34,25 +57,39 @@ public class Renderer {
         if (spr != null){
             add(spr);
         }
+        Tilemap tilemap = go.getComponent(Tilemap.class);
+        if (tilemap != null) {
+            tilemaps.add(new TilemapRenderer(tilemap));
+        }
     }
 
     /**
      * Adds a sprite to a render batch.
      *
-     * This method checks if there is a render batch that has room for the sprite and
-     * either the same zIndex as the sprite's game object or the same texture as the sprite.
+     * This method checks if there is a render batch that has room for the sprite, the same zIndex and chunk
+     * as the sprite's game object, the same kind (static or dynamic) as the sprite, and either the same texture
+     * as the sprite or room for it. Opaque sprites go to the batches of the opaque pass, whatever their zIndex.
+     * Grouping the sprites by chunk keeps the bounds of every batch small, so off-screen batches can be culled,
+     * and keeping static sprites apart means their buffers are not re-uploaded when a dynamic sprite changes.
      * If such a render batch exists, the sprite is added to it. If not, a new render batch is created, started,
      * and added to the list of render batches, and the sprite is added to the new render batch.
      *
      * @param sprite The sprite to be added.
      */
     private void add(SpriteRenderer sprite){
+        sprite.setRenderer(this);
+        long chunk = chunkOf(sprite);
+        boolean isStatic = sprite.isStatic();
+        boolean isOpaque = isOpaque(sprite);
         boolean added = false;
         for (RenderBatch batch : batches){
-            if (batch.hasRoom() && batch.getzIndex() == sprite.gameObject.transform.zIndex){
+            if (batch.hasRoom() && batch.isOpaque() == isOpaque &&
+                    (isOpaque || batch.getzIndex() == sprite.gameObject.transform.getZIndex()) &&
+                    batch.getChunk() == chunk && batch.isStatic() == isStatic){
                 Texture tex = sprite.getTexture();
                 if (tex == null || (batch.hasTexture(tex) || batch.hasTextureRoom())) {
                     batch.addSprite(sprite);
+                    spriteBatches.put(sprite, batch);
                     added = true;
                     break;
                 }
@@ -60,29 +97,139 @@ public class Renderer {
         }
 
         if (!added) {
-            RenderBatch newBatch = new RenderBatch(MAX_BATCH_SIZE,
-                    sprite.gameObject.transform.zIndex, this);
+            RenderBatch newBatch = createBatch(sprite.gameObject.transform.getZIndex(), chunk, isStatic, isOpaque);
             newBatch.start();
             batches.add(newBatch);
             newBatch.addSprite(sprite);
-            Collections.sort(batches);
+            spriteBatches.put(sprite, newBatch);
         }
     }
 
+    /**
+     * Creates a render batch for a zIndex.
+     *
+     * The batch expands every sprite into four vertices on the CPU, or uploads one instance per sprite
+     * when instanced sprites are enabled in the {@link Settings}.
+     *
+     * @param zIndex The zIndex of the batch.
+     * @param chunk The chunk key of the batch.
+     * @param isStatic True if the batch holds static sprites.
+     * @param isOpaque True if the batch holds opaque sprites of any zIndex.
+     * @return The new render batch.
+     */
+    private RenderBatch createBatch(int zIndex, long chunk, boolean isStatic, boolean isOpaque) {
+        if (Settings.INSTANCED_SPRITES) {
+            return new InstancedRenderBatch(MAX_BATCH_SIZE, zIndex, chunk, isStatic, isOpaque, this);
+        }
+        return new RenderBatch(MAX_BATCH_SIZE, zIndex, chunk, isStatic, isOpaque, this);
+    }
+
+    /**
+     * Checks if a sprite is drawn in the opaque pass.
+     *
+     * @param sprite The sprite to check.
+     * @return True if the opaque pass is enabled and the sprite is opaque, false otherwise.
+     */
+    public boolean isOpaque(SpriteRenderer sprite) {
+        return opaquePass && sprite.isOpaque();
+    }
+
+    /**
+     * Returns the key of the chunk of the world that contains the position of a sprite.
+     *
+     * @param sprite The sprite to locate.
+     * @return The chunk key, with the column in the high bits and the row in the low bits.
+     */
+    private static long chunkOf(SpriteRenderer sprite) {
+        int column = (int) Math.floor(sprite.gameObject.transform.position.x / Settings.CHUNK_SIZE);
+        int row = (int) Math.floor(sprite.gameObject.transform.position.y / Settings.CHUNK_SIZE);
+        return ((long) column << 32) | (row & 0xFFFFFFFFL);
+    }
+
     /**
      * Destroys a game object.
      *
-     * This method checks if the game object has a SpriteRenderer component, and if so, removes the game object from the render batch that contains it.
+     * This method checks if the game object has a SpriteRenderer component, and if so, looks up the render batch
+     * that contains it and removes the sprite from it.
      *
      * @param go The game object to be destroyed.
      */
     public void destroyGameObject(GameObject go) {
-        if (go.getComponent(SpriteRenderer.class) == null) return;
-        for (RenderBatch batch : batches){
-            if (batch.destroyIfExists(go)){
-                return;
+        Tilemap tilemap = go.getComponent(Tilemap.class);
+        if (tilemap != null) {
+            for (int i = 0; i < tilemaps.size(); i++) {
+                if (tilemaps.get(i).getTilemap() == tilemap) {
+                    tilemaps.remove(i).destroy();
+                    break;
+                }
+            }
+        }
+        SpriteRenderer spr = go.getComponent(SpriteRenderer.class);
+        if (spr == null) return;
+        RenderBatch batch = spriteBatches.remove(spr);
+        if (batch != null){
+            batch.removeSprite(spr);
+            spr.setRenderer(null);
+        }
+    }
+
+    /**
+     * Queues a sprite whose game object changed its zIndex.
+     *
+     * The sprite is moved to a render batch of the new zIndex in a deferred pass at the start of the next render,
+     * so changing the zIndex several times in a frame only moves the sprite once.
+     *
+     * @param spr The sprite whose zIndex changed.
+     */
+    public synchronized void zIndexChanged(SpriteRenderer spr) {
+        pendingRebuckets.add(spr);
+    }
+
+    /**
+     * Queues a sprite that became static or dynamic.
+     *
+     * The sprite is moved to a render batch of the right kind in the same deferred pass as the zIndex changes,
+     * so a static sprite that starts moving leaves its static batch, and a sprite that stopped changing
+     * leaves its streaming batch.
+     *
+     * It can be called by the batches while they are prepared in parallel.
+     *
+     * @param spr The sprite that became static or dynamic.
+     */
+    public synchronized void staticStateChanged(SpriteRenderer spr) {
+        pendingRebuckets.add(spr);
+    }
+
+    /**
+     * Queues a sprite that became opaque or translucent.
+     *
+     * The sprite is moved between the opaque pass and the translucent pass in the same deferred pass
+     * as the zIndex changes. It can be called by the batches while they are prepared in parallel.
+     *
+     * @param spr The sprite that became opaque or translucent.
+     */
+    public synchronized void opacityChanged(SpriteRenderer spr) {
+        pendingRebuckets.add(spr);
+    }
+
+    /**
+     * Moves the queued sprites to render batches that match their current zIndex, chunk, kind and opacity.
+     * The batches of the opaque pass hold every zIndex, so a zIndex change alone does not move an opaque sprite.
+     */
+    private void rebucketSprites() {
+        if (pendingRebuckets.isEmpty()) return;
+        for (SpriteRenderer spr : pendingRebuckets) {
+            RenderBatch batch = spriteBatches.get(spr);
+            if (batch == null || (batch.isOpaque() == isOpaque(spr) &&
+                    (batch.isOpaque() || batch.getzIndex() == spr.gameObject.transform.getZIndex()) &&
+                    batch.getChunk() == chunkOf(spr) && batch.isStatic() == spr.isStatic())) {
+                continue;
             }
+            batch.removeSprite(spr);
+            spriteBatches.remove(spr);
+            add(spr);
         }
+        pendingRebuckets.clear();
     }
 
     /**
@@ -96,6 +243,18 @@ public class Renderer {
         currentShader = shader;
     }
 
+    /**
+     * Binds the shader used to draw the tilemaps.
+     *
+     * The tilemaps are always built from quads, so they need the quad shader of the current pass
+     * even when the sprites are drawn with an instanced shader.
+     *
+     * @param shader The shader to be bound.
+     */
+    public static void bindTilemapShader(Shader shader){
+        currentTilemapShader = shader;
+    }
+
     /**
      * Returns the currently bound shader.
      *
@@ -108,23 +267,132 @@ public class Renderer {
     /**
      * Renders the batches.
      *
-     * This method iterates over the render batches and renders each one using the currently bound shader.
+     * This method moves the sprites whose zIndex or kind changed to their new batches and builds the vertices of every
+     * batch. With the opaque pass, the visible opaque batches are then submitted to the render queue with a key made of
+     * the shader, the main texture and their highest zIndex, and dispatched with the depth test and depth writes
+     * enabled and without blending, so they are drawn from the front to the back and the depth buffer keeps the layers
+     * in order. It then submits every tilemap and every visible translucent batch with a sort key made of
+     * the zIndex, the shader and the main texture, and dispatches the queue, which draws them from the back to the front,
+     * still depth tested against the opaque sprites but without writing the depth. The queue skips the redundant state
+     * changes. Tilemaps are drawn before the batches of the same zIndex. Finally it destroys the batches that were
+     * removed while rendering.
      */
     public void render() {
+        long start = System.nanoTime();
+        rebucketSprites();
+        prepareBatches();
+
+        int sequence = 0;
+        if (opaquePass) {
+            for (int i = 0; i < batches.size(); i++) {
+                RenderBatch batch = batches.get(i);
+                if (!batch.isOpaque()) continue;
+                if (!batch.isVisible()) {
+                    RenderStats.addCulledBatch(batch.getNumSprites());
+                    continue;
+                }
+                queue.submit(queue.opaqueKey(currentShader, batch.getSortTexture(), batch.getFrontZIndex(), sequence++),
+                        batch, currentShader);
+            }
+            glEnable(GL_DEPTH_TEST);
+            glDepthFunc(GL_LEQUAL);
+            glDisable(GL_BLEND);
+            queue.dispatch();
+            glEnable(GL_BLEND);
+            glDepthMask(false);
+        }
+
+        for (int i = 0; i < tilemaps.size(); i++) {
+            TilemapRenderer tilemap = tilemaps.get(i);
+            if (!tilemap.hasChunks()) continue;
+            queue.submit(queue.key(tilemap.getzIndex(), 0, currentTilemapShader, tilemap.getSortTexture(), sequence++),
+                    tilemap, currentTilemapShader);
+        }
         for (int i = 0; i < batches.size(); i++){
             RenderBatch batch = batches.get(i);
-            batch.render(currentShader);
+            if (batch.isOpaque()) continue;
+            if (!batch.isVisible()) {
+                RenderStats.addCulledBatch(batch.getNumSprites());
+                continue;
+            }
+            queue.submit(queue.key(batch.getzIndex(), 1, currentShader, batch.getSortTexture(), sequence++),
+                    batch, currentShader);
+        }
+        queue.dispatch();
+
+        if (opaquePass) {
+            glDepthMask(true);
+            glDisable(GL_DEPTH_TEST);
         }
+
+        destroyRetiredBatches();
+        RenderStats.addRenderTime(System.nanoTime() - start);
+    }
+
+    /**
+     * Builds the vertices of every render batch and the changed chunks of every tilemap before any of them is drawn.
+     *
+     * The tilemap chunks and the textures of the dirty sprites are handled on this thread, because that needs
+     * the GL context.
+     * The vertices are then built in parallel on the common ForkJoin pool when parallel vertex building is enabled
+     * in the {@link Settings}, since every batch only writes its own memory. The uploads and draws stay on this thread.
+     */
+    private void prepareBatches() {
+        long start = System.nanoTime();
+        for (int i = 0; i < tilemaps.size(); i++) {
+            tilemaps.get(i).prepare();
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            batches.get(i).registerTextures();
+        }
+        if (Settings.PARALLEL_VERTEX_BUILD && batches.size() > 1) {
+            batches.parallelStream().forEach(RenderBatch::prepare);
+        } else {
+            for (int i = 0; i < batches.size(); i++) {
+                batches.get(i).prepare();
+            }
+        }
+        RenderStats.addPrepareTime(System.nanoTime() - start);
     }
 
     /**
      * Removes a render batch.
      *
-     * This method removes a specified render batch from the list of render batches.
+     * This method removes a specified render batch from the list of render batches. The batch is destroyed
+     * at the end of the next render, because it can be removed while it is still being rendered.
      *
      * @param renderBatch The render batch to be removed.
      */
     public void removeRenderBatch(RenderBatch renderBatch){
-        batches.remove(renderBatch);
+        if (batches.remove(renderBatch)) {
+            retiredBatches.add(renderBatch);
+        }
+    }
+
+    /**
+     * Destroys the removed render batches and frees their GPU and off-heap memory.
+     */
+    private void destroyRetiredBatches() {
+        for (RenderBatch batch : retiredBatches) {
+            batch.destroy();
+        }
+        retiredBatches.clear();
+    }
+
+    /**
+     * Destroys the renderer.
+     *
+     * This method destroys every render batch, so their GPU and off-heap memory is freed when the scene changes.
+     */
+    public void destroy() {
+        retiredBatches.addAll(batches);
+        batches.clear();
+        spriteBatches.clear();
+        pendingRebuckets.clear();
+        destroyRetiredBatches();
+        for (TilemapRenderer tilemap : tilemaps) {
+            tilemap.destroy();
+        }
+        tilemaps.clear();
     }
 }
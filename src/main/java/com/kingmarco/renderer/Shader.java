@@ -5,8 +5,12 @@ import org.lwjgl.BufferUtils;
 
 import java.io.IOException;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.GL_FALSE;
 import static org.lwjgl.opengl.GL20.*;
@@ -14,11 +18,18 @@ import static org.lwjgl.opengl.GL20.glGetShaderInfoLog;
 
 /**
  * This class represents a Shader logic in OpenGL to be processed, rendered and displayed.
+ *
+ * The locations of the uniforms are reflected once the program is linked, and every upload goes through
+ * a reusable off-heap buffer and is skipped when the uniform already holds the same values.
  */
 public class Shader {
+    private static final Map<String, String> defines = new LinkedHashMap<>();
+    // Scratch buffers of the uploads, shaders are only used from the render thread
+    private static final FloatBuffer floatScratch = BufferUtils.createFloatBuffer(16);
+    private static IntBuffer intScratch = BufferUtils.createIntBuffer(32);
 
     private int shaderProgramID;
-    private boolean beingUsed = false;
+    private final Map<String, Uniform> uniforms = new HashMap<>();
     private String vertexSource;
     private String fragmentSource;
     private String filepath;
@@ -31,17 +42,19 @@ public class Shader {
     public Shader(String filepath){
         this.filepath = filepath;
         try {
-            String source = new String(Files.readAllBytes(Paths.get(filepath)));
+            // Any line ending works, the shaders can be checked out with CRLF or LF
+            String source = new String(Files.readAllBytes(Paths.get(filepath)))
+                    .replace("\r\n", "\n").replace('\r', '\n');
             String[] splitString = source.split("(#type)( )+([a-zA-Z]+)");
 
             // Find the first pattern after #type 'pattern
             int index = source.indexOf("#type") + 6;
-            int eol = source.indexOf("\r\n", index);
+            int eol = source.indexOf('\n', index);
             String firstPattern = source.substring(index, eol).trim();
 
             // Find the second pattern after #type 'pattern
             index = source.indexOf("#type", eol) + 6;
-            eol = source.indexOf("\r\n", index);
+            eol = source.indexOf('\n', index);
             String secondPattern = source.substring(index, eol).trim();
 
             if (firstPattern.equals("vertex")){
@@ -66,11 +79,57 @@ public class Shader {
         }
     }
 
+    /**
+     * Sets a preprocessor define that is injected into every shader compiled afterwards.
+     *
+     * This allows the shaders to size their arrays from values that are only known at runtime,
+     * like the number of texture units of the hardware.
+     *
+     * @param name The name of the define.
+     * @param value The value of the define.
+     */
+    public static void define(String name, String value) {
+        defines.put(name, value);
+    }
+
+    /**
+     * Injects the defines right after the #version line of a shader source.
+     *
+     * @param source The source of the shader stage.
+     * @return The source with the defines injected.
+     */
+    private static String injectDefines(String source) {
+        if (defines.isEmpty()) return source;
+
+        StringBuilder block = new StringBuilder();
+        for (Map.Entry<String, String> define : defines.entrySet()) {
+            block.append("#define ").append(define.getKey()).append(' ').append(define.getValue()).append('\n');
+        }
+
+        int version = source.indexOf("#version");
+        int eol = version < 0 ? -1 : source.indexOf('\n', version);
+        if (eol < 0) {
+            return block + source;
+        }
+        return source.substring(0, eol + 1) + block + source.substring(eol + 1);
+    }
+
     /**
      * Compiles the vertex and fragment shaders.
-     * It first loads and compiles the vertex shader, checks for errors, and then does the same for the fragment shader.
+     * It first looks for a binary of the program in the {@link ShaderCache}. When there is none, it loads and
+     * compiles the vertex shader, checks for errors, and then does the same for the fragment shader.
      */
     public void compile(){
+        String vertex = injectDefines(vertexSource);
+        String fragment = injectDefines(fragmentSource);
+        String cacheKey = ShaderCache.key(vertex, fragment);
+        int cachedProgram = ShaderCache.load(cacheKey);
+        if (cachedProgram != 0) {
+            shaderProgramID = cachedProgram;
+            prepareProgram();
+            return;
+        }
+
         // ========================================
         // Compile Shaders
         // ========================================
@@ -79,7 +138,7 @@ public class Shader {
         //First load and compile the vertex shader
         vertexID = glCreateShader(GL_VERTEX_SHADER);
         // Pass the shader source to the GPU
-        glShaderSource(vertexID, vertexSource);
+        glShaderSource(vertexID, vertex);
         glCompileShader(vertexID);
 
         // Check for errors in compilation
@@ -94,7 +153,7 @@ public class Shader {
         //First load and compile the vertex shader
         fragmentID = glCreateShader(GL_FRAGMENT_SHADER);
         // Pass the shader source to the GPU
-        glShaderSource(fragmentID, fragmentSource);
+        glShaderSource(fragmentID, fragment);
         glCompileShader(fragmentID);
 
         // Check for errors in compilation
@@ -107,11 +166,12 @@ public class Shader {
         }
 
         link(vertexID, fragmentID, success);
+        ShaderCache.store(cacheKey, shaderProgramID);
     }
 
     /**
      * Links the compiled vertex and fragment shaders to create a complete shader program.
-     * It also checks for errors during the linking process.
+     * It also checks for errors during the linking process and prepares the program to be used.
      *
      * @param vertexID The ID of the compiled vertex shader.
      * @param fragmentID The ID of the compiled fragment shader.
@@ -126,6 +186,7 @@ public class Shader {
         shaderProgramID = glCreateProgram();
         glAttachShader(shaderProgramID, vertexID);
         glAttachShader(shaderProgramID, fragmentID);
+        ShaderCache.prepare(shaderProgramID);
         glLinkProgram(shaderProgramID);
 
         //Check for linking errors
@@ -136,26 +197,112 @@ public class Shader {
             System.out.println(glGetProgramInfoLog(shaderProgramID, len));
             assert false : "";
         }
+
+        prepareProgram();
+    }
+
+    /**
+     * Reflects the uniforms of the linked program and links its camera block to the {@link CameraBuffer}.
+     */
+    private void prepareProgram() {
+        reflectUniforms();
+        CameraBuffer.bindBlock(shaderProgramID);
     }
 
 
+    /**
+     * Reflects the active uniforms of the linked program into the uniform table.
+     * The names of uniform arrays are stored without the "[0]" suffix, like they are uploaded.
+     */
+    private void reflectUniforms() {
+        uniforms.clear();
+        int count = glGetProgrami(shaderProgramID, GL_ACTIVE_UNIFORMS);
+        IntBuffer size = BufferUtils.createIntBuffer(1);
+        IntBuffer type = BufferUtils.createIntBuffer(1);
+        for (int i = 0; i < count; i++) {
+            String name = glGetActiveUniform(shaderProgramID, i, size, type);
+            if (name.endsWith("[0]")) {
+                name = name.substring(0, name.length() - 3);
+            }
+            uniforms.put(name, new Uniform(glGetUniformLocation(shaderProgramID, name)));
+        }
+    }
+
     /**
      * Binds the shader program if it is not already being used.
      */
     public void use() {
-        if (!beingUsed){
-            // Bind shader program
-            glUseProgram(shaderProgramID);
-            beingUsed = true;
-        }
+        GLState.useProgram(shaderProgramID);
     }
 
     /**
      * Detaches the shader program.
      */
     public void detach(){
-        glUseProgram(0);
-        beingUsed = false;
+        GLState.useProgram(0);
+    }
+
+    /**
+     * Returns the scratch buffer for float uniforms, ready to hold a number of values.
+     *
+     * @param count The number of values.
+     * @return The scratch buffer.
+     */
+    private static FloatBuffer floats(int count) {
+        floatScratch.clear().limit(count);
+        return floatScratch;
+    }
+
+    /**
+     * Returns the scratch buffer for integer uniforms, ready to hold a number of values.
+     *
+     * @param count The number of values.
+     * @return The scratch buffer.
+     */
+    private static IntBuffer ints(int count) {
+        if (intScratch.capacity() < count) {
+            intScratch = BufferUtils.createIntBuffer(count);
+        }
+        intScratch.clear().limit(count);
+        return intScratch;
+    }
+
+    /**
+     * Looks up a uniform and checks if the values in the float scratch buffer differ from the last upload.
+     * When they do, the values are remembered and the shader is used, so they can be uploaded.
+     *
+     * @param varName The name of the variable in the shader.
+     * @return The location of the uniform, or -1 if the upload can be skipped.
+     */
+    private int changedFloats(String varName) {
+        Uniform uniform = uniforms.get(varName);
+        if (uniform == null) return -1;
+        if (!uniform.update(floatScratch)) {
+            RenderStats.addSkippedGlCall();
+            return -1;
+        }
+        use();
+        RenderStats.addGlCall();
+        return uniform.location;
+    }
+
+    /**
+     * Looks up a uniform and checks if the values in the integer scratch buffer differ from the last upload.
+     * When they do, the values are remembered and the shader is used, so they can be uploaded.
+     *
+     * @param varName The name of the variable in the shader.
+     * @return The location of the uniform, or -1 if the upload can be skipped.
+     */
+    private int changedInts(String varName) {
+        Uniform uniform = uniforms.get(varName);
+        if (uniform == null) return -1;
+        if (!uniform.update(intScratch)) {
+            RenderStats.addSkippedGlCall();
+            return -1;
+        }
+        use();
+        RenderStats.addGlCall();
+        return uniform.location;
     }
 
     /**
@@ -165,11 +312,10 @@ public class Shader {
      * @param mat4 The 4x4 matrix to upload.
      */
     public void uploadMat4f(String varName, Matrix4f mat4){
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
-        FloatBuffer matBuffer = BufferUtils.createFloatBuffer(16);
-        mat4.get(matBuffer);
-        glUniformMatrix4fv(varLocation, false, matBuffer);
+        mat4.get(floats(16));
+        int varLocation = changedFloats(varName);
+        if (varLocation < 0) return;
+        glUniformMatrix4fv(varLocation, false, floatScratch);
     }
 
     /**
@@ -179,11 +325,10 @@ public class Shader {
      * @param mat3 The 3x3 matrix to upload.
      */
     public void uploadMat3f(String varName, Matrix3f mat3){
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
-        FloatBuffer matBuffer = BufferUtils.createFloatBuffer(9);
-        mat3.get(matBuffer);
-        glUniformMatrix3fv(varLocation, false, matBuffer);
+        mat3.get(floats(9));
+        int varLocation = changedFloats(varName);
+        if (varLocation < 0) return;
+        glUniformMatrix3fv(varLocation, false, floatScratch);
     }
 
     /**
@@ -193,8 +338,9 @@ public class Shader {
      * @param vec The 4D vector to upload.
      */
     public void uploadVec4f(String varName, Vector4f vec) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
+        vec.get(floats(4));
+        int varLocation = changedFloats(varName);
+        if (varLocation < 0) return;
         glUniform4f(varLocation, vec.x, vec.y, vec.z, vec.w);
     }
 
@@ -205,8 +351,9 @@ public class Shader {
      * @param vec The 3D vector to upload.
      */
     public void uploadVec3f(String varName, Vector3f vec) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
+        vec.get(floats(3));
+        int varLocation = changedFloats(varName);
+        if (varLocation < 0) return;
         glUniform3f(varLocation, vec.x, vec.y, vec.z);
     }
 
@@ -217,8 +364,9 @@ public class Shader {
      * @param vec The 2D vector to upload.
      */
     public void uploadVec2f(String varName, Vector2f vec) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
+        vec.get(floats(2));
+        int varLocation = changedFloats(varName);
+        if (varLocation < 0) return;
         glUniform2f(varLocation, vec.x, vec.y);
     }
 
@@ -229,8 +377,9 @@ public class Shader {
      * @param val The float value to upload.
      */
     public void uploadFloat(String varName, float val){
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
+        floats(1).put(0, val);
+        int varLocation = changedFloats(varName);
+        if (varLocation < 0) return;
         glUniform1f(varLocation, val);
     }
 
@@ -241,8 +390,9 @@ public class Shader {
      * @param val The integer value to upload.
      */
     public void uploadInt(String varName, int val){
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
+        ints(1).put(0, val);
+        int varLocation = changedInts(varName);
+        if (varLocation < 0) return;
         glUniform1i(varLocation, val);
     }
 
@@ -253,9 +403,7 @@ public class Shader {
      * @param slot The texture object to upload.
      */
     public void uploadTexture(String varName, int slot){
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
-        glUniform1i(varLocation, slot);
+        uploadInt(varName, slot);
     }
 
     /**
@@ -265,8 +413,66 @@ public class Shader {
      * @param array The integer array value to upload.
      */
     public void uploadIntArray(String varName, int[] array){
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
-        glUniform1iv(varLocation, array);
+        ints(array.length).put(array).flip();
+        int varLocation = changedInts(varName);
+        if (varLocation < 0) return;
+        glUniform1iv(varLocation, intScratch);
+    }
+
+    /**
+     * A uniform of the program, with the values of its last upload.
+     */
+    private static class Uniform {
+        private final int location;
+        private float[] floats;
+        private int[] ints;
+
+        private Uniform(int location) {
+            this.location = location;
+        }
+
+        /**
+         * Remembers the values of a buffer, from its position to its limit.
+         *
+         * @param values The values to upload.
+         * @return True if they differ from the last upload, false otherwise.
+         */
+        private boolean update(FloatBuffer values) {
+            int count = values.remaining();
+            boolean changed = floats == null || floats.length != count;
+            if (changed) {
+                floats = new float[count];
+            }
+            for (int i = 0; i < count; i++) {
+                float value = values.get(values.position() + i);
+                if (changed || Float.floatToIntBits(floats[i]) != Float.floatToIntBits(value)) {
+                    floats[i] = value;
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * Remembers the values of a buffer, from its position to its limit.
+         *
+         * @param values The values to upload.
+         * @return True if they differ from the last upload, false otherwise.
+         */
+        private boolean update(IntBuffer values) {
+            int count = values.remaining();
+            boolean changed = ints == null || ints.length != count;
+            if (changed) {
+                ints = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                int value = values.get(values.position() + i);
+                if (changed || ints[i] != value) {
+                    ints[i] = value;
+                    changed = true;
+                }
+            }
+            return changed;
+        }
     }
 }
@@ -0,0 +1,155 @@
+package com.kingmarco.renderer;
+
+import com.kingmarco.util.Settings;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.lwjgl.opengl.ARBGetProgramBinary.*;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * The ShaderCache class stores the binaries of the linked shader programs on disk.
+ *
+ * A binary is keyed by the hash of the shader sources and of the vendor, renderer and version of the driver,
+ * so a change to a shader or a driver update simply misses the cache. Loading a binary with glProgramBinary
+ * skips compiling and linking the sources, which makes the startup faster. When the driver rejects a binary,
+ * the file is deleted and the shader is compiled from its sources again.
+ */
+public class ShaderCache {
+    private static final String CACHE_PATH = "build/shadercache";
+    private static Boolean supported = null;
+    private static String driver = null;
+
+    /**
+     * Checks if the binaries of the programs can be read back and loaded.
+     *
+     * @return True if the cache is enabled and the driver supports program binaries, false otherwise.
+     */
+    public static boolean isSupported() {
+        if (supported == null) {
+            supported = GL.getCapabilities().GL_ARB_get_program_binary &&
+                    glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+        }
+        return supported && Settings.SHADER_BINARY_CACHE;
+    }
+
+    /**
+     * Builds the cache key of a program.
+     *
+     * @param vertexSource The source of the vertex shader, with the defines injected.
+     * @param fragmentSource The source of the fragment shader, with the defines injected.
+     * @return The key of the program, or null if the cache can not be used.
+     */
+    public static String key(String vertexSource, String fragmentSource) {
+        if (!isSupported()) return null;
+        if (driver == null) {
+            driver = glGetString(GL_VENDOR) + "|" + glGetString(GL_RENDERER) + "|" + glGetString(GL_VERSION);
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(driver.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(vertexSource.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(fragmentSource.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Creates a program from the binary stored for a key.
+     *
+     * @param key The key of the program.
+     * @return The ID of the linked program, or 0 if there is no binary or the driver rejected it.
+     */
+    public static int load(String key) {
+        if (key == null) return 0;
+        Path file = Paths.get(CACHE_PATH, key + ".bin");
+        if (!Files.isRegularFile(file)) return 0;
+
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length <= Integer.BYTES) {
+                Files.deleteIfExists(file);
+                return 0;
+            }
+
+            // The binary format comes first, followed by the binary itself
+            ByteBuffer buffer = BufferUtils.createByteBuffer(bytes.length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).put(bytes).flip();
+            int format = buffer.getInt();
+
+            int programID = glCreateProgram();
+            glProgramBinary(programID, format, buffer);
+            if (glGetProgrami(programID, GL_LINK_STATUS) == GL_FALSE) {
+                glDeleteProgram(programID);
+                Files.deleteIfExists(file);
+                return 0;
+            }
+            return programID;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Marks a program so its binary can be read back after it is linked.
+     *
+     * @param programID The ID of the program, before it is linked.
+     */
+    public static void prepare(int programID) {
+        if (isSupported()) {
+            glProgramParameteri(programID, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+        }
+    }
+
+    /**
+     * Stores the binary of a linked program.
+     *
+     * @param key The key of the program.
+     * @param programID The ID of the linked program.
+     */
+    public static void store(String key, int programID) {
+        if (key == null || glGetProgrami(programID, GL_LINK_STATUS) == GL_FALSE) return;
+        int length = glGetProgrami(programID, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) return;
+
+        ByteBuffer binary = BufferUtils.createByteBuffer(length);
+        IntBuffer written = BufferUtils.createIntBuffer(1);
+        IntBuffer format = BufferUtils.createIntBuffer(1);
+        glGetProgramBinary(programID, written, format, binary);
+
+        byte[] bytes = new byte[Integer.BYTES + written.get(0)];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(format.get(0));
+        binary.get(bytes, Integer.BYTES, written.get(0));
+
+        try {
+            Files.createDirectories(Paths.get(CACHE_PATH));
+            Files.write(Paths.get(CACHE_PATH, key + ".bin"), bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
 import static org.lwjgl.stb.STBImage.*;
 
 /**
@@ -18,6 +19,11 @@ public class Texture {
     private String filepath;
     private transient int texID;
     private int width, height;
+    private transient TextureArray textureArray;
+    private transient int arrayLayer;
+    private transient AtlasRegion atlasRegion;
+    // True if some pixel is neither fully transparent nor fully opaque, so the texture can not be drawn without blending
+    private transient boolean translucent = false;
 
     public Texture() {
         texID = -1;
@@ -41,6 +47,32 @@ public class Texture {
                         0, GL_RGB, GL_UNSIGNED_BYTE, 0);
     }
 
+    /**
+     * Constructs an empty RGBA texture that is filled in later, like the pages of a texture atlas.
+     *
+     * @param name The name used as the filepath of the texture.
+     * @param width The width of the texture.
+     * @param height The height of the texture.
+     */
+    public Texture(String name, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.filepath = name;
+
+        // Generate texture on GPU
+        texID = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, texID);
+
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height,
+                0, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
     /**
      * Initializes the texture with a specified filepath.
      *
@@ -83,6 +115,7 @@ public class Texture {
             } else if (channels.get(0) == 4){
                 glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width.get(0), height.get(0),
                         0, GL_RGBA, GL_UNSIGNED_BYTE, image);
+                this.translucent = hasPartialAlpha(image);
             } else {
                 assert false : "Error: (Texture) Unknown number of channels'" + channels.get(0) + "'";
             }
@@ -93,6 +126,22 @@ public class Texture {
         stbi_image_free(image);
     }
 
+    /**
+     * Checks if an RGBA image has a pixel that is neither fully transparent nor fully opaque.
+     *
+     * @param image The pixels of the image, four bytes per pixel.
+     * @return True if the alpha of a pixel is between 0 and 255, false otherwise.
+     */
+    private static boolean hasPartialAlpha(ByteBuffer image) {
+        for (int i = 3; i < image.limit(); i += 4) {
+            int alpha = image.get(i) & 0xFF;
+            if (alpha != 0 && alpha != 0xFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Binds the texture.
      *
@@ -147,6 +196,65 @@ public class Texture {
         return texID;
     }
 
+    /**
+     * Checks if the texture has pixels that have to be blended.
+     *
+     * Textures whose pixels are all fully opaque or fully transparent can be drawn in the opaque pass,
+     * since the transparent pixels are discarded by the shaders.
+     *
+     * @return True if some pixel is partially transparent, false otherwise.
+     */
+    public boolean isTranslucent() {
+        return translucent;
+    }
+
+    /**
+     * Returns the texture array that holds a copy of this texture.
+     *
+     * @return The texture array, or null if the texture was not added to one yet.
+     */
+    public TextureArray getTextureArray() {
+        return textureArray;
+    }
+
+    /**
+     * Returns the layer of the texture array that holds a copy of this texture.
+     *
+     * @return The layer of the texture.
+     */
+    public int getArrayLayer() {
+        return arrayLayer;
+    }
+
+    /**
+     * Sets the texture array and the layer that hold a copy of this texture.
+     *
+     * @param textureArray The texture array.
+     * @param arrayLayer The layer of the texture array.
+     */
+    public void setArrayLayer(TextureArray textureArray, int arrayLayer) {
+        this.textureArray = textureArray;
+        this.arrayLayer = arrayLayer;
+    }
+
+    /**
+     * Returns the region of the texture atlas that holds this texture.
+     *
+     * @return The atlas region, or null if the texture was not packed.
+     */
+    public AtlasRegion getAtlasRegion() {
+        return atlasRegion;
+    }
+
+    /**
+     * Sets the region of the texture atlas that holds this texture.
+     *
+     * @param atlasRegion The atlas region.
+     */
+    public void setAtlasRegion(AtlasRegion atlasRegion) {
+        this.atlasRegion = atlasRegion;
+    }
+
     /**
      * Checks if another object is equal to this texture.
      *
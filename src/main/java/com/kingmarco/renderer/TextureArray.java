@@ -0,0 +1,233 @@
+package com.kingmarco.renderer;
+
+import com.kingmarco.util.Settings;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL12.glTexSubImage3D;
+import static org.lwjgl.opengl.GL30.GL_MAX_ARRAY_TEXTURE_LAYERS;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
+
+/**
+ * The TextureArray class handles a GL_TEXTURE_2D_ARRAY that holds textures of the same size as layers.
+ *
+ * Textures are added to the array of their size the first time they are rendered, so every sprite that uses
+ * a texture of that size can be drawn through a single sampler. The array grows when it runs out of layers,
+ * up to the limit of the driver, and a new array of the same size is started after that.
+ */
+public class TextureArray {
+    private static final int INITIAL_LAYERS = 4;
+    private static final Map<Long, TextureArray> arrays = new HashMap<>();
+    private static int maxLayers = -1;
+
+    private int texID;
+    private final int width, height;
+    private int layers;
+    private int capacity;
+
+    /**
+     * Constructs an empty TextureArray for textures of a specified size.
+     *
+     * @param width The width of every layer.
+     * @param height The height of every layer.
+     * @param capacity The number of layers to allocate.
+     */
+    public TextureArray(int width, int height, int capacity) {
+        this.width = width;
+        this.height = height;
+        this.layers = 0;
+        this.capacity = capacity;
+        this.texID = allocate(capacity);
+    }
+
+    /**
+     * Returns the TextureArray that holds a texture, adding the texture to one if needed.
+     *
+     * When texture arrays are enabled in the {@link Settings}, the texture is added as a new layer to the array
+     * of its size. Otherwise, every texture gets an array of its own with a single layer.
+     *
+     * @param texture The texture to look up.
+     * @return The TextureArray that holds the texture.
+     */
+    public static TextureArray of(Texture texture) {
+        if (texture.getTextureArray() != null) {
+            return texture.getTextureArray();
+        }
+
+        TextureArray array;
+        if (Settings.TEXTURE_ARRAYS) {
+            long key = ((long) texture.getWidth() << 32) | (texture.getHeight() & 0xFFFFFFFFL);
+            array = arrays.get(key);
+            if (array == null || !array.hasRoom()) {
+                array = new TextureArray(texture.getWidth(), texture.getHeight(), INITIAL_LAYERS);
+                arrays.put(key, array);
+            }
+        } else {
+            array = new TextureArray(texture.getWidth(), texture.getHeight(), 1);
+        }
+
+        texture.setArrayLayer(array, array.add(texture));
+        return array;
+    }
+
+    /**
+     * Returns the maximum number of layers of a texture array supported by the driver.
+     *
+     * @return The maximum number of layers.
+     */
+    private static int getMaxLayers() {
+        if (maxLayers < 0) {
+            maxLayers = glGetInteger(GL_MAX_ARRAY_TEXTURE_LAYERS);
+        }
+        return maxLayers;
+    }
+
+    /**
+     * Allocates the storage of the array on the GPU.
+     *
+     * @param layerCount The number of layers to allocate.
+     * @return The ID of the new texture.
+     */
+    private int allocate(int layerCount) {
+        int id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D_ARRAY, id);
+
+        // Repeat image in both directions
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        // Pixelate when stretching or shrinking
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, width, height, layerCount,
+                0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+        return id;
+    }
+
+    /**
+     * Adds a texture as the next layer of the array.
+     *
+     * This method grows the array if it is full, reads the pixels of the texture back from the GPU
+     * and copies them into the new layer.
+     *
+     * @param texture The texture to add.
+     * @return The layer that holds the texture.
+     */
+    private int add(Texture texture) {
+        if (layers >= capacity) {
+            grow(Math.min(capacity * 2, getMaxLayers()));
+        }
+
+        copyLayer(texture, layers);
+        return layers++;
+    }
+
+    /**
+     * Copies the current pixels of a texture into its layer again.
+     *
+     * This method has to be called when a texture that was already added to the array is modified on the GPU.
+     *
+     * @param texture The texture to update.
+     */
+    public void update(Texture texture) {
+        if (texture.getTextureArray() != this) return;
+        copyLayer(texture, texture.getArrayLayer());
+    }
+
+    /**
+     * Reads the pixels of a texture back from the GPU and copies them into a layer.
+     *
+     * @param texture The texture to copy.
+     * @param layer The layer to copy into.
+     */
+    private void copyLayer(Texture texture, int layer) {
+        ByteBuffer pixels = MemoryUtil.memAlloc(width * height * 4);
+        glBindTexture(GL_TEXTURE_2D, texture.getTexID());
+        glGetTexImage(GL_TEXTURE_2D, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        glBindTexture(GL_TEXTURE_2D_ARRAY, texID);
+        glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, width, height, 1,
+                GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+        MemoryUtil.memFree(pixels);
+    }
+
+    /**
+     * Grows the array to a specified number of layers, keeping the layers already added.
+     *
+     * @param newCapacity The new number of layers.
+     */
+    private void grow(int newCapacity) {
+        ByteBuffer pixels = MemoryUtil.memAlloc(width * height * 4 * layers);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, texID);
+        glGetTexImage(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+        glDeleteTextures(texID);
+
+        texID = allocate(newCapacity);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, texID);
+        glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, 0, width, height, layers,
+                GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+        MemoryUtil.memFree(pixels);
+
+        capacity = newCapacity;
+    }
+
+    /**
+     * Checks if the array can take one more layer.
+     *
+     * @return True if there is room for another texture, false otherwise.
+     */
+    public boolean hasRoom() {
+        return layers < capacity || capacity < getMaxLayers();
+    }
+
+    /**
+     * Binds the texture array.
+     */
+    public void bind() {
+        glBindTexture(GL_TEXTURE_2D_ARRAY, texID);
+    }
+
+    /**
+     * Unbinds the texture array.
+     */
+    public void unbind() {
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+    }
+
+    /**
+     * Returns the ID of the texture array.
+     *
+     * @return The ID of the texture array.
+     */
+    public int getTexID() {
+        return texID;
+    }
+
+    /**
+     * Returns the width of every layer.
+     *
+     * @return The width of the layers.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of every layer.
+     *
+     * @return The height of the layers.
+     */
+    public int getHeight() {
+        return height;
+    }
+}
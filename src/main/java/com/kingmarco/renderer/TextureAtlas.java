@@ -0,0 +1,236 @@
+package com.kingmarco.renderer;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * The TextureAtlas class packs textures into a few large pages at runtime.
+ *
+ * Every texture is trimmed of its transparent borders and placed in a page with a skyline packer.
+ * The edge pixels of the trimmed part are extruded into a padding around it, so sampling next to the edge
+ * never bleeds into the neighbouring textures. The source textures are kept, and the renderer maps the
+ * texture coordinates of a sprite into the page through the {@link AtlasRegion} of its texture.
+ */
+public class TextureAtlas {
+    private static final int MAX_PAGE_SIZE = 2048;
+    private static final int PADDING = 2;
+
+    private final List<Page> pages = new ArrayList<>();
+    private int pageSize = -1;
+
+    /**
+     * Packs the textures that are not in the atlas yet.
+     *
+     * This method sorts the textures by height, reads back their pixels, trims them and places them in the first
+     * page with room, starting a new page when none has room. Textures bigger than a page are left out and
+     * are rendered on their own. Pages that were already copied into a texture array are updated.
+     *
+     * @param textures The textures to pack.
+     */
+    public void pack(Collection<Texture> textures) {
+        if (pageSize < 0) {
+            pageSize = Math.min(MAX_PAGE_SIZE, glGetInteger(GL_MAX_TEXTURE_SIZE));
+        }
+
+        List<Texture> pending = new ArrayList<>();
+        for (Texture texture : textures) {
+            if (texture.getAtlasRegion() == null && texture.getTexID() > 0 &&
+                    texture.getWidth() + 2 * PADDING <= pageSize && texture.getHeight() + 2 * PADDING <= pageSize) {
+                pending.add(texture);
+            }
+        }
+        pending.sort((a, b) -> Integer.compare(b.getHeight(), a.getHeight()));
+
+        List<Page> changedPages = new ArrayList<>();
+        for (Texture texture : pending) {
+            Page page = packTexture(texture);
+            if (page != null && !changedPages.contains(page)) {
+                changedPages.add(page);
+            }
+        }
+
+        for (Page page : changedPages) {
+            if (page.texture.getTextureArray() != null) {
+                page.texture.getTextureArray().update(page.texture);
+            }
+        }
+    }
+
+    /**
+     * Packs a single texture into the atlas.
+     *
+     * @param texture The texture to pack.
+     * @return The page the texture was packed into, or null if it is fully transparent.
+     */
+    private Page packTexture(Texture texture) {
+        int width = texture.getWidth();
+        int height = texture.getHeight();
+        ByteBuffer pixels = MemoryUtil.memAlloc(width * height * 4);
+        texture.bind();
+        glGetTexImage(GL_TEXTURE_2D, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        texture.unbind();
+
+        // Find the bounds of the pixels that are not transparent
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (pixels.get((y * width + x) * 4 + 3) != 0) {
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0) {
+            MemoryUtil.memFree(pixels);
+            return null;
+        }
+        int trimWidth = maxX - minX + 1;
+        int trimHeight = maxY - minY + 1;
+        int paddedWidth = trimWidth + 2 * PADDING;
+        int paddedHeight = trimHeight + 2 * PADDING;
+
+        Page page = null;
+        int[] position = null;
+        for (Page candidate : pages) {
+            position = candidate.insert(paddedWidth, paddedHeight);
+            if (position != null) {
+                page = candidate;
+                break;
+            }
+        }
+        if (page == null) {
+            page = new Page(pages.size(), pageSize);
+            pages.add(page);
+            position = page.insert(paddedWidth, paddedHeight);
+        }
+
+        // Copy the trimmed pixels, extruding the edges into the padding
+        ByteBuffer padded = MemoryUtil.memAlloc(paddedWidth * paddedHeight * 4);
+        for (int y = 0; y < paddedHeight; y++) {
+            int sourceY = minY + Math.max(0, Math.min(trimHeight - 1, y - PADDING));
+            for (int x = 0; x < paddedWidth; x++) {
+                int sourceX = minX + Math.max(0, Math.min(trimWidth - 1, x - PADDING));
+                padded.putInt((y * paddedWidth + x) * 4, pixels.getInt((sourceY * width + sourceX) * 4));
+            }
+        }
+
+        page.texture.bind();
+        glTexSubImage2D(GL_TEXTURE_2D, 0, position[0], position[1], paddedWidth, paddedHeight,
+                GL_RGBA, GL_UNSIGNED_BYTE, padded);
+        page.texture.unbind();
+        MemoryUtil.memFree(padded);
+        MemoryUtil.memFree(pixels);
+
+        texture.setAtlasRegion(new AtlasRegion(page.texture, width, height, minX, minY, trimWidth, trimHeight,
+                position[0] + PADDING, position[1] + PADDING));
+        return page;
+    }
+
+    /**
+     * Returns the number of pages of the atlas.
+     *
+     * @return The number of pages.
+     */
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * A page of the atlas, with the skyline that tracks its free space.
+     *
+     * Every node of the skyline is a horizontal segment stored as {x, y, width}, and the segments cover
+     * the whole width of the page from left to right.
+     */
+    private static class Page {
+        private final Texture texture;
+        private final int size;
+        private final List<int[]> skyline = new ArrayList<>();
+
+        Page(int index, int size) {
+            this.texture = new Texture("Atlas/" + index, size, size);
+            this.size = size;
+            this.skyline.add(new int[]{0, 0, size});
+        }
+
+        /**
+         * Finds the lowest position where a rectangle fits and raises the skyline over it.
+         *
+         * @param width The width of the rectangle.
+         * @param height The height of the rectangle.
+         * @return The position {x, y} of the rectangle, or null if the page has no room for it.
+         */
+        int[] insert(int width, int height) {
+            int bestIndex = -1, bestY = Integer.MAX_VALUE, bestWidth = Integer.MAX_VALUE;
+            for (int i = 0; i < skyline.size(); i++) {
+                int y = fit(i, width, height);
+                if (y < 0) continue;
+                int nodeWidth = skyline.get(i)[2];
+                if (y < bestY || (y == bestY && nodeWidth < bestWidth)) {
+                    bestIndex = i;
+                    bestY = y;
+                    bestWidth = nodeWidth;
+                }
+            }
+            if (bestIndex < 0) return null;
+
+            int x = skyline.get(bestIndex)[0];
+            skyline.add(bestIndex, new int[]{x, bestY + height, width});
+
+            // Shrink or remove the segments covered by the new one
+            for (int i = bestIndex + 1; i < skyline.size(); i++) {
+                int[] previous = skyline.get(i - 1);
+                int[] node = skyline.get(i);
+                int overlap = previous[0] + previous[2] - node[0];
+                if (overlap <= 0) break;
+                node[0] += overlap;
+                node[2] -= overlap;
+                if (node[2] > 0) break;
+                skyline.remove(i);
+                i--;
+            }
+
+            // Merge the neighbouring segments at the same height
+            for (int i = 0; i < skyline.size() - 1; i++) {
+                int[] node = skyline.get(i);
+                int[] next = skyline.get(i + 1);
+                if (node[1] == next[1]) {
+                    node[2] += next[2];
+                    skyline.remove(i + 1);
+                    i--;
+                }
+            }
+            return new int[]{x, bestY};
+        }
+
+        /**
+         * Returns the height at which a rectangle placed on a segment would rest.
+         *
+         * @param index The index of the segment where the rectangle starts.
+         * @param width The width of the rectangle.
+         * @param height The height of the rectangle.
+         * @return The height of the rectangle's bottom, or -1 if it does not fit.
+         */
+        private int fit(int index, int width, int height) {
+            int x = skyline.get(index)[0];
+            if (x + width > size) return -1;
+
+            int y = 0;
+            int widthLeft = width;
+            for (int i = index; widthLeft > 0; i++) {
+                int[] node = skyline.get(i);
+                y = Math.max(y, node[1]);
+                if (y + height > size) return -1;
+                widthLeft -= node[2];
+            }
+            return y;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.kingmarco.renderer;
+
+import com.kingmarco.components.Sprite;
+import com.kingmarco.components.SpritesSheet;
+import com.kingmarco.components.Tilemap;
+import com.kingmarco.forge.Window;
+import com.kingmarco.util.Settings;
+import org.joml.Vector2f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL30.glVertexAttribIPointer;
+
+/**
+ * The TilemapRenderer class draws the tiles of a {@link Tilemap}.
+ *
+ * Every chunk of the tilemap gets its own GL_STATIC_DRAW vertex buffer, built once from the tile indices and
+ * rebuilt only when a tile of the chunk changes, and is drawn with a single call. Chunks outside the camera are
+ * culled. The whole tilemap is a single command of the {@link RenderQueue}. The vertices use the same layout
+ * as the vertices of a {@link RenderBatch}, so the tiles are drawn and picked with the same shaders as the batched sprites.
+ */
+public class TilemapRenderer implements RenderCommand {
+    // Vertex (28 bytes), the layout of RenderBatch
+    // =======
+    // Pos                      Color                   tex coords        tex id  tex layer  entity id
+    //float, float, float,      ubyte x4 (normalized)   ushort x2 (norm)  ushort  ushort     uint
+
+    private static final int POS_OFFSET = 0;
+    private static final int COLOR_OFFSET = 12;
+    private static final int TEX_COORDS_OFFSET = 16;
+    private static final int TEX_ID_OFFSET = 20;
+    private static final int TEX_LAYER_OFFSET = 22;
+    private static final int ENTITY_ID_OFFSET = 24;
+    private static final int VERTEX_SIZE_BYTES = 28;
+    private static final int MAX_QUADS = Tilemap.CHUNK_TILES * Tilemap.CHUNK_TILES;
+
+    // Corners of a tile, in the same order as the texture coordinates of a sprite
+    private static final float[] CORNERS_X = {1, 1, 0, 0};
+    private static final float[] CORNERS_Y = {1, 0, 0, 1};
+
+    private final Tilemap tilemap;
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    private final Set<Long> dirtyChunks = new LinkedHashSet<>();
+    private final Vector2f builtOrigin = new Vector2f(Float.NaN, Float.NaN);
+    private int builtZIndex = 0;
+    private ByteBuffer vertices;
+    private int eboID = -1;
+
+    /**
+     * Constructs a TilemapRenderer for a tilemap.
+     *
+     * @param tilemap The tilemap to draw.
+     */
+    public TilemapRenderer(Tilemap tilemap) {
+        this.tilemap = tilemap;
+        this.vertices = MemoryUtil.memAlloc(MAX_QUADS * 4 * VERTEX_SIZE_BYTES);
+    }
+
+    /**
+     * Rebuilds the chunks whose tiles changed, or every chunk if the game object moved or changed its zIndex,
+     * since the zIndex is written into the vertices as their depth.
+     *
+     * This method has to run before the render queue is dispatched, because adding the sprite sheet, or the atlas page
+     * it was packed into, to a texture array can replace the texture of the array.
+     */
+    public void prepare() {
+        SpritesSheet sheet = tilemap.getSheet();
+        if (sheet == null) return;
+
+        Vector2f origin = tilemap.gameObject.transform.position;
+        if (!origin.equals(builtOrigin) || getzIndex() != builtZIndex) {
+            dirtyChunks.addAll(tilemap.getChunks().keySet());
+            builtOrigin.set(origin);
+            builtZIndex = getzIndex();
+        }
+        tilemap.drainDirtyChunks(dirtyChunks);
+        for (long key : dirtyChunks) {
+            buildChunk(key, sheet);
+        }
+        dirtyChunks.clear();
+    }
+
+    /**
+     * Checks if the tilemap has any chunk to draw.
+     *
+     * @return True if at least one chunk has tiles, false otherwise.
+     */
+    public boolean hasChunks() {
+        return !chunks.isEmpty();
+    }
+
+    /**
+     * Returns the texture that the tilemap is sorted by in the {@link RenderQueue}.
+     *
+     * @return The ID of the texture array of the sprite sheet.
+     */
+    public int getSortTexture() {
+        return TextureArray.of(RenderBatch.getRenderTexture(tilemap.getSheet().getTexture())).getTexID();
+    }
+
+    /**
+     * Renders the tilemap.
+     *
+     * This method uses the shader and binds the texture array of the sprite sheet through the queue,
+     * which skips what is already bound, and draws every visible chunk with a single call.
+     *
+     * @param queue The queue that dispatches the tilemap.
+     * @param shader The shader to be used for rendering.
+     */
+    @Override
+    public void execute(RenderQueue queue, Shader shader) {
+        queue.useShader(shader);
+        queue.bindTextureArray(0, TextureArray.of(RenderBatch.getRenderTexture(tilemap.getSheet().getTexture())));
+
+        for (Chunk chunk : chunks.values()) {
+            if (!Window.getScene().camera().isVisible(chunk.minX, chunk.minY, chunk.maxX, chunk.maxY)) {
+                RenderStats.addCulledBatch(chunk.quadCount);
+                continue;
+            }
+            GLState.bindVertexArray(chunk.vaoID);
+            glDrawElements(GL_TRIANGLES, chunk.quadCount * 6, GL_UNSIGNED_INT, 0);
+            RenderStats.addDrawCall(chunk.quadCount);
+        }
+    }
+
+    /**
+     * Builds the vertex buffer of a chunk from its tiles.
+     *
+     * This method writes a quad for every tile that is not empty and uploads them to the buffer of the chunk,
+     * creating the buffer the first time. A chunk without tiles is destroyed. If the sprite sheet was packed into
+     * an atlas page, the tiles sample the page like the batched sprites do, and the corners of a tile are moved
+     * to the edge of the trimmed part.
+     *
+     * @param key The key of the chunk.
+     * @param sheet The sprite sheet of the tiles.
+     */
+    private void buildChunk(long key, SpritesSheet sheet) {
+        int[] tiles = tilemap.getChunks().get(key);
+        Chunk chunk = chunks.get(key);
+
+        int chunkX = (int) (key >> 32);
+        int chunkY = (int) key;
+        Vector2f origin = tilemap.gameObject.transform.position;
+        float chunkLeft = origin.x + chunkX * Tilemap.CHUNK_TILES * Settings.GRID_WIDTH;
+        float chunkBottom = origin.y + chunkY * Tilemap.CHUNK_TILES * Settings.GRID_HEIGHT;
+        // Adds the sprite sheet, or its atlas page, to its texture array, so its layer is known
+        Texture renderTexture = RenderBatch.getRenderTexture(sheet.getTexture());
+        TextureArray.of(renderTexture);
+        int texLayer = renderTexture.getArrayLayer();
+        AtlasRegion region = sheet.getTexture().getAtlasRegion();
+        int entityId = tilemap.gameObject.getUid() + 1;
+        // Half a layer behind the sprites of the same zIndex, which are drawn over the tiles
+        float zIndex = getzIndex() - 0.5f;
+
+        int quadCount = 0;
+        int offset = 0;
+        for (int i = 0; tiles != null && i < tiles.length; i++) {
+            int tile = tiles[i] - 1;
+            if (tile < 0 || tile >= sheet.size()) continue;
+
+            Sprite sprite = sheet.getSprite(tile);
+            Vector2f[] texCoords = sprite.getTexCoords();
+            // Change of the texture coordinates across the width and the height of the tile
+            float uSpan = texCoords[0].x - texCoords[2].x;
+            float vSpan = texCoords[0].y - texCoords[1].y;
+            float left = chunkLeft + (i % Tilemap.CHUNK_TILES) * Settings.GRID_WIDTH;
+            float bottom = chunkBottom + (i / Tilemap.CHUNK_TILES) * Settings.GRID_HEIGHT;
+            for (int corner = 0; corner < 4; corner++) {
+                float u = texCoords[corner].x;
+                float v = texCoords[corner].y;
+                float xLocal = CORNERS_X[corner];
+                float yLocal = CORNERS_Y[corner];
+                if (region != null) {
+                    // Move the corner to the edge of the trimmed part, then map it into the page
+                    float uClamped = region.clampU(u);
+                    float vClamped = region.clampV(v);
+                    if (uSpan != 0) xLocal += (uClamped - u) / uSpan;
+                    if (vSpan != 0) yLocal += (vClamped - v) / vSpan;
+                    u = region.mapU(uClamped);
+                    v = region.mapV(vClamped);
+                }
+                vertices.putFloat(offset + POS_OFFSET, left + xLocal * Settings.GRID_WIDTH);
+                vertices.putFloat(offset + POS_OFFSET + Float.BYTES, bottom + yLocal * Settings.GRID_HEIGHT);
+                vertices.putFloat(offset + POS_OFFSET + 2 * Float.BYTES, zIndex);
+                vertices.putInt(offset + COLOR_OFFSET, 0xFFFFFFFF);
+                vertices.putShort(offset + TEX_COORDS_OFFSET, RenderBatch.toUnorm16(u));
+                vertices.putShort(offset + TEX_COORDS_OFFSET + Short.BYTES, RenderBatch.toUnorm16(v));
+                vertices.putShort(offset + TEX_ID_OFFSET, (short) 1);
+                vertices.putShort(offset + TEX_LAYER_OFFSET, (short) texLayer);
+                vertices.putInt(offset + ENTITY_ID_OFFSET, entityId);
+                offset += VERTEX_SIZE_BYTES;
+            }
+            quadCount++;
+        }
+
+        if (quadCount == 0) {
+            if (chunk != null) {
+                chunk.destroy();
+                chunks.remove(key);
+            }
+            return;
+        }
+        if (chunk == null) {
+            chunk = new Chunk();
+            chunks.put(key, chunk);
+        }
+
+        chunk.quadCount = quadCount;
+        chunk.minX = chunkLeft;
+        chunk.minY = chunkBottom;
+        chunk.maxX = chunkLeft + Tilemap.CHUNK_TILES * Settings.GRID_WIDTH;
+        chunk.maxY = chunkBottom + Tilemap.CHUNK_TILES * Settings.GRID_HEIGHT;
+        vertices.limit(offset);
+        glBindBuffer(GL_ARRAY_BUFFER, chunk.vboID);
+        glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+        vertices.clear();
+    }
+
+    /**
+     * Returns the index buffer shared by every chunk, creating it the first time.
+     *
+     * @return The ID of the index buffer.
+     */
+    private int getElementBuffer() {
+        if (eboID < 0) {
+            int[] elements = new int[6 * MAX_QUADS];
+            for (int i = 0; i < MAX_QUADS; i++) {
+                int offset = 4 * i;
+                elements[6 * i] = offset + 3;
+                elements[6 * i + 1] = offset + 2;
+                elements[6 * i + 2] = offset;
+                elements[6 * i + 3] = offset;
+                elements[6 * i + 4] = offset + 2;
+                elements[6 * i + 5] = offset + 1;
+            }
+            eboID = glGenBuffers();
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, elements, GL_STATIC_DRAW);
+        }
+        return eboID;
+    }
+
+    /**
+     * Returns the zIndex of the tilemap.
+     *
+     * @return The zIndex of the game object of the tilemap.
+     */
+    public int getzIndex() {
+        return tilemap.gameObject.transform.getZIndex();
+    }
+
+    /**
+     * Returns the tilemap drawn by this renderer.
+     *
+     * @return The tilemap.
+     */
+    public Tilemap getTilemap() {
+        return tilemap;
+    }
+
+    /**
+     * Destroys the buffers of every chunk and frees the off-heap vertices.
+     */
+    public void destroy() {
+        for (Chunk chunk : chunks.values()) {
+            chunk.destroy();
+        }
+        chunks.clear();
+        if (eboID >= 0) {
+            glDeleteBuffers(eboID);
+            eboID = -1;
+        }
+        MemoryUtil.memFree(vertices);
+        vertices = null;
+    }
+
+    /**
+     * The vertex array and buffer of a chunk, with the number of tiles and the bounds of the chunk.
+     */
+    private class Chunk {
+        private final int vaoID;
+        private final int vboID;
+        private int quadCount;
+        private float minX, minY, maxX, maxY;
+
+        Chunk() {
+            vaoID = glGenVertexArrays();
+            GLState.bindVertexArray(vaoID);
+            vboID = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, vboID);
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, getElementBuffer());
+
+            glVertexAttribPointer(0, 3, GL_FLOAT, false, VERTEX_SIZE_BYTES, POS_OFFSET);
+            glEnableVertexAttribArray(0);
+            glVertexAttribPointer(1, 4, GL_UNSIGNED_BYTE, true, VERTEX_SIZE_BYTES, COLOR_OFFSET);
+            glEnableVertexAttribArray(1);
+            glVertexAttribPointer(2, 2, GL_UNSIGNED_SHORT, true, VERTEX_SIZE_BYTES, TEX_COORDS_OFFSET);
+            glEnableVertexAttribArray(2);
+            glVertexAttribIPointer(3, 1, GL_UNSIGNED_SHORT, VERTEX_SIZE_BYTES, TEX_ID_OFFSET);
+            glEnableVertexAttribArray(3);
+            glVertexAttribIPointer(4, 1, GL_UNSIGNED_INT, VERTEX_SIZE_BYTES, ENTITY_ID_OFFSET);
+            glEnableVertexAttribArray(4);
+            glVertexAttribIPointer(5, 1, GL_UNSIGNED_SHORT, VERTEX_SIZE_BYTES, TEX_LAYER_OFFSET);
+            glEnableVertexAttribArray(5);
+        }
+
+        void destroy() {
+            glDeleteBuffers(vboID);
+            glDeleteVertexArrays(vaoID);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.kingmarco.renderer;
+
+import com.kingmarco.util.Settings;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.*;
+
+/**
+ * The VertexStream class handles the streaming of vertex data from the CPU to an OpenGL buffer.
+ *
+ * When the driver supports immutable buffer storage (GL 4.4 or ARB_buffer_storage) the buffer is allocated once,
+ * persistently mapped and split into three regions that are written in turn. Every region is guarded by a fence,
+ * so the CPU never writes into memory the GPU is still reading from and the driver never has to stall.
+ * On GL 3.3 the stream falls back to a single buffer that is orphaned when all of its data changes.
+ * A static stream holds data that rarely changes, so it uses a single GL_STATIC_DRAW buffer that is only
+ * updated in place when something changes.
+ */
+public class VertexStream {
+    public static final int REGIONS = 3;
+    private static final long FENCE_TIMEOUT = 1_000_000L;
+
+    private final long regionSize;
+    private final boolean persistent;
+    private final boolean isStatic;
+    private int vboID;
+    private ByteBuffer mapped;
+    private final long[] fences = new long[REGIONS];
+    private final DirtyRanges[] pendingRanges;
+    private int region = 0;
+
+    /**
+     * Constructs a VertexStream able to hold a specified number of bytes per upload.
+     *
+     * @param regionSize The size in bytes of one upload.
+     */
+    public VertexStream(long regionSize) {
+        this(regionSize, false);
+    }
+
+    /**
+     * Constructs a VertexStream able to hold a specified number of bytes per upload.
+     *
+     * @param regionSize The size in bytes of one upload.
+     * @param isStatic True if the data rarely changes and should live in a GL_STATIC_DRAW buffer.
+     */
+    public VertexStream(long regionSize, boolean isStatic) {
+        this.regionSize = regionSize;
+        this.isStatic = isStatic;
+        this.persistent = !isStatic && Settings.PERSISTENT_VERTEX_STREAMING && VertexStream.isPersistentSupported();
+
+        this.pendingRanges = new DirtyRanges[persistent ? REGIONS : 1];
+        for (int i = 0; i < pendingRanges.length; i++) {
+            pendingRanges[i] = new DirtyRanges();
+        }
+    }
+
+    /**
+     * Checks if the current OpenGL context supports persistently mapped buffers.
+     *
+     * @return True if glBufferStorage is available, false otherwise.
+     */
+    public static boolean isPersistentSupported() {
+        return GL.getCapabilities().glBufferStorage != 0L;
+    }
+
+    /**
+     * Starts the stream.
+     *
+     * This method generates the buffer and binds it to GL_ARRAY_BUFFER, so the caller can set up the vertex attribute
+     * pointers of the currently bound vertex array. In persistent mode the storage for all the regions is allocated and
+     * mapped once, otherwise only the storage for a single upload is allocated.
+     */
+    public void start() {
+        vboID = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboID);
+
+        if (persistent) {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            glBufferStorage(GL_ARRAY_BUFFER, regionSize * REGIONS, flags);
+            mapped = glMapBufferRange(GL_ARRAY_BUFFER, 0, regionSize * REGIONS, flags);
+        } else {
+            glBufferData(GL_ARRAY_BUFFER, regionSize, isStatic ? GL_STATIC_DRAW : GL_STREAM_DRAW);
+        }
+    }
+
+    /**
+     * Marks a byte range of the vertex data as changed.
+     *
+     * The range is queued for every region of the buffer, so each region receives the change
+     * the next time it is written, even if it was not the one being written when the change happened.
+     *
+     * @param offset The first byte of the range.
+     * @param length The number of bytes in the range.
+     */
+    public void markDirty(int offset, int length) {
+        for (DirtyRanges ranges : pendingRanges) {
+            ranges.add(offset, offset + length);
+        }
+    }
+
+    /**
+     * Uploads the changed ranges of the vertex data.
+     *
+     * In persistent mode this method moves to the next region, waits until the GPU has finished reading it and copies
+     * the ranges that region is missing straight into the mapped memory. Otherwise it uploads the changed ranges with
+     * glBufferSubData, and only orphans the buffer storage when the whole buffer changed, so the driver does not have
+     * to wait for the draw calls that still use the old storage.
+     *
+     * @param data The off-heap vertex data, starting at its position.
+     */
+    public void flush(ByteBuffer data) {
+        long dataAddress = MemoryUtil.memAddress(data);
+        if (persistent) {
+            region = (region + 1) % REGIONS;
+            waitFence(region);
+
+            DirtyRanges ranges = pendingRanges[region];
+            long regionAddress = MemoryUtil.memAddress(mapped) + region * regionSize;
+            for (int i = 0; i < ranges.size(); i++) {
+                int start = ranges.getStart(i);
+                int length = ranges.getEnd(i) - start;
+                MemoryUtil.memCopy(dataAddress + start, regionAddress + start, length);
+                RenderStats.addUpload(length);
+            }
+            ranges.clear();
+        } else {
+            DirtyRanges ranges = pendingRanges[0];
+            glBindBuffer(GL_ARRAY_BUFFER, vboID);
+            if (!isStatic && ranges.size() == 1 && ranges.getStart(0) == 0 && ranges.getEnd(0) >= regionSize) {
+                glBufferData(GL_ARRAY_BUFFER, regionSize, GL_STREAM_DRAW);
+            }
+            for (int i = 0; i < ranges.size(); i++) {
+                int start = ranges.getStart(i);
+                int length = ranges.getEnd(i) - start;
+                nglBufferSubData(GL_ARRAY_BUFFER, start, length, dataAddress + start);
+                RenderStats.addUpload(length);
+            }
+            ranges.clear();
+        }
+    }
+
+    /**
+     * Uploads the first bytes of the vertex data, when all of it is rewritten every frame.
+     *
+     * In persistent mode this method moves to the next region, waits until the GPU has finished reading it and copies
+     * the bytes into the mapped memory. Otherwise it orphans the buffer storage and uploads the bytes with
+     * glBufferSubData, so only the used part of the buffer is sent and the driver never waits for the last frame.
+     *
+     * @param data The off-heap vertex data, starting at its position.
+     * @param length The number of bytes to upload, at most the size of a region.
+     */
+    public void stream(ByteBuffer data, int length) {
+        long dataAddress = MemoryUtil.memAddress(data);
+        if (persistent) {
+            region = (region + 1) % REGIONS;
+            waitFence(region);
+            MemoryUtil.memCopy(dataAddress, MemoryUtil.memAddress(mapped) + region * regionSize, length);
+        } else {
+            glBindBuffer(GL_ARRAY_BUFFER, vboID);
+            glBufferData(GL_ARRAY_BUFFER, regionSize, GL_STREAM_DRAW);
+            nglBufferSubData(GL_ARRAY_BUFFER, 0, length, dataAddress);
+        }
+        RenderStats.addUpload(length);
+    }
+
+    /**
+     * Returns the first vertex of the region the next draw call has to read from.
+     *
+     * @param vertexSizeBytes The size in bytes of one vertex.
+     * @return The base vertex to pass to glDrawElementsBaseVertex.
+     */
+    public int getBaseVertex(int vertexSizeBytes) {
+        return (int) (region * regionSize / vertexSizeBytes);
+    }
+
+    /**
+     * Returns the byte offset of the region the next draw call has to read from.
+     *
+     * @return The offset in bytes from the start of the buffer.
+     */
+    public long getRegionOffset() {
+        return region * regionSize;
+    }
+
+    /**
+     * Places a fence after the draw calls that read from the current region.
+     *
+     * This method has to be called after every draw that uses the stream, so the region is not overwritten
+     * until the GPU is done with it. It does nothing when the stream is orphaning.
+     */
+    public void fence() {
+        if (!persistent) return;
+        if (fences[region] != 0L) {
+            glDeleteSync(fences[region]);
+        }
+        fences[region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    /**
+     * Waits until the GPU has finished reading a region and deletes its fence.
+     *
+     * @param index The index of the region.
+     */
+    private void waitFence(int index) {
+        long sync = fences[index];
+        if (sync == 0L) return;
+
+        int waitFlags = 0;
+        while (true) {
+            int result = glClientWaitSync(sync, waitFlags, FENCE_TIMEOUT);
+            if (result == GL_ALREADY_SIGNALED || result == GL_CONDITION_SATISFIED || result == GL_WAIT_FAILED) {
+                break;
+            }
+            waitFlags = GL_SYNC_FLUSH_COMMANDS_BIT;
+        }
+        glDeleteSync(sync);
+        fences[index] = 0L;
+    }
+
+    /**
+     * Returns the ID of the buffer.
+     *
+     * @return The ID of the buffer.
+     */
+    public int getVboID() {
+        return vboID;
+    }
+
+    /**
+     * Checks if the stream uses a persistently mapped buffer.
+     *
+     * @return True if the buffer is persistently mapped, false if it is updated with glBufferSubData.
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * Checks if the stream holds static data.
+     *
+     * @return True if the buffer is a GL_STATIC_DRAW buffer, false otherwise.
+     */
+    public boolean isStatic() {
+        return isStatic;
+    }
+
+    /**
+     * Destroys the stream.
+     *
+     * This method deletes the pending fences, unmaps the buffer if needed and deletes it.
+     */
+    public void destroy() {
+        for (int i = 0; i < REGIONS; i++) {
+            if (fences[i] != 0L) {
+                glDeleteSync(fences[i]);
+                fences[i] = 0L;
+            }
+        }
+        if (persistent && mapped != null) {
+            glBindBuffer(GL_ARRAY_BUFFER, vboID);
+            glUnmapBuffer(GL_ARRAY_BUFFER);
+            mapped = null;
+        }
+        glDeleteBuffers(vboID);
+    }
+}
@@ -109,13 +109,14 @@ public class Scene {
     }
 
     /**
-     * Destroys all game objects in the scene.
+     * Destroys all game objects in the scene and the renderer.
      */
     public void destroy() {
         for (int i =0; i < gameObjects.size(); i++){
             GameObject go = gameObjects.get(i);
             go.destroy();
         }
+        this.renderer.destroy();
     }
 
     /**
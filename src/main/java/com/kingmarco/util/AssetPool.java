@@ -4,6 +4,7 @@ import com.kingmarco.components.SpritesSheet;
 import com.kingmarco.forge.Sound;
 import com.kingmarco.renderer.Shader;
 import com.kingmarco.renderer.Texture;
+import com.kingmarco.renderer.TextureAtlas;
 
 import java.io.File;
 import java.util.Collection;
@@ -21,6 +22,7 @@ public class AssetPool {
     private static final Map<String, Texture> textures = new HashMap<>();
     private static final Map<String, SpritesSheet> spritesheets = new HashMap<>();
     private static final Map<String, Sound> sounds = new HashMap<>();
+    private static final TextureAtlas atlas = new TextureAtlas();
 
     /**
      * Returns the shader with the specified resource name.
@@ -62,6 +64,18 @@ public class AssetPool {
         }
     }
 
+    /**
+     * Packs the textures of the asset pool into the texture atlas.
+     *
+     * This method packs every texture loaded so far, including the textures of the sprite sheets, that is not
+     * in the atlas yet. It should be called once the resources of a scene are loaded and before its sprites are
+     * rendered. It does nothing if the texture atlas is disabled in the {@link Settings}.
+     */
+    public static void packTextures() {
+        if (!Settings.TEXTURE_ATLAS) return;
+        atlas.pack(textures.values());
+    }
+
     /**
      * Adds a sprite sheet to the asset pool.
      *
@@ -1,11 +1,47 @@
 package com.kingmarco.util;
 
 /**
- * The Settings class holds the configuration values for the grid.
+ * The Settings class holds the configuration values for the grid and the renderer.
  *
- * This class provides static fields to set the width and height of the grid.
+ * This class provides static fields to set the width and height of the grid,
+ * and the features the renderer is allowed to use.
  */
 public class Settings {
     public static float GRID_WIDTH = 0.25f;
     public static float GRID_HEIGHT = 0.25f;
+    // Number of grid cells between two major lines of the editor grid
+    public static int GRID_MAJOR_LINES = 4;
+
+    // Stream the vertices through a persistently mapped buffer when the driver supports it
+    public static boolean PERSISTENT_VERTEX_STREAMING = true;
+    // Group the textures of the same size into texture arrays, instead of one array per texture
+    public static boolean TEXTURE_ARRAYS = true;
+    // Pack the loaded textures into atlas pages, so fewer textures have to be bound
+    public static boolean TEXTURE_ATLAS = true;
+    // Upload one instance per sprite and build the quads in the vertex shader, read once at startup
+    public static boolean INSTANCED_SPRITES = false;
+    // Size in world units of the chunks used to group sprites into batches that can be culled
+    public static float CHUNK_SIZE = 8.0f;
+    // Number of renders without changes after which a sprite is moved to a static batch
+    public static int STATIC_SPRITE_RENDERS = 120;
+    // Number of renders in a row with changes after which a static sprite is moved back to a dynamic batch
+    public static int DYNAMIC_SPRITE_RENDERS = 3;
+    // Build the vertices of the render batches in parallel before drawing them
+    public static boolean PARALLEL_VERTEX_BUILD = true;
+    // Store the binaries of the linked shaders on disk and load them instead of compiling the sources
+    public static boolean SHADER_BINARY_CACHE = true;
+    // Draw the debug lines as quads of DEBUG_LINE_WIDTH pixels, instead of thin GL_LINES
+    public static boolean THICK_DEBUG_LINES = true;
+    // Width in pixels of the thick debug lines and of the outlines of the debug shapes
+    public static float DEBUG_LINE_WIDTH = 2.0f;
+    // Scale of the game framebuffer relative to the size of the game viewport, without dynamic resolution
+    public static float RENDER_SCALE = 1.0f;
+    // Lower the render scale when the GPU time of a frame exceeds GPU_FRAME_BUDGET_MS, and raise it when there is headroom
+    public static boolean DYNAMIC_RESOLUTION = false;
+    // GPU time in milliseconds a frame may take before dynamic resolution lowers the render scale
+    public static float GPU_FRAME_BUDGET_MS = 12.0f;
+    // Lowest render scale dynamic resolution may use
+    public static float MIN_RENDER_SCALE = 0.5f;
+    // Draw the opaque sprites first with the depth test, batched across zIndex layers, read when a scene is loaded
+    public static boolean OPAQUE_DEPTH_PASS = true;
 }